@@ -0,0 +1,157 @@
+package com.NewApp;
+
+/*
+ * Movement metrics from the 3 axis accelerometer packets (50 Hz, 20 samples
+ * per packet, in g). The axes of one packet are copied into separate float
+ * arrays and every step works on a whole block with plain indexed loops and
+ * no branches, so the JIT can unroll and vectorize them. Only the step detector
+ * has to look at the samples in order.
+ *
+ * Gravity is tracked as a slow average of every axis. What remains once it is
+ * removed is the movement: its mean vector magnitude is the activity level, and
+ * the peaks of its vertical part (along gravity) are counted as steps.
+ */
+public class AccelerometerMetrics {
+
+	public static final int SAMPLE_RATE = 50;
+	public static final int MAX_SAMPLES = 64;
+
+	// share of a new packet in the gravity estimate
+	private static final float GRAVITY_WEIGHT = 0.2f;
+	// a step peaks over STEP_HIGH g upwards and the detector re-arms under STEP_LOW g
+	private static final float STEP_HIGH = 0.15f;
+	private static final float STEP_LOW = 0f;
+	// no one walks faster than 200 steps per minute
+	private static final int MIN_STEP_SAMPLES = SAMPLE_RATE * 60 / 200;
+	// cadence over the last steps, and back to 0 after this long without one
+	private static final int CADENCE_STEPS = 8;
+	private static final int STOPPED_SAMPLES = 3 * SAMPLE_RATE;
+
+	private final float[] x = new float[MAX_SAMPLES];
+	private final float[] y = new float[MAX_SAMPLES];
+	private final float[] z = new float[MAX_SAMPLES];
+	private final float[] magnitude = new float[MAX_SAMPLES];
+	private final float[] vertical = new float[MAX_SAMPLES];
+	private int count = 0;
+
+	private float gravityX, gravityY, gravityZ;
+	private boolean calibrated = false;
+
+	private boolean armed = true;
+	// samples since the stream started, to time the steps
+	private long sampleIndex = 0;
+	private final long[] stepAt = new long[CADENCE_STEPS];
+	private int stepCount = 0;
+
+	private float activity = 0;
+	private float cadence = 0;
+
+	// Copies one packet's axes, straight from the packet, and updates the metrics
+	public void update(ZephyrPayload.Accelerometer packet) {
+		count = ZephyrPayload.Accelerometer.SAMPLES;
+		for (int i = 0; i < count; ++i) {
+			x[i] = (float) packet.x(i);
+			y[i] = (float) packet.y(i);
+			z[i] = (float) packet.z(i);
+		}
+		update();
+	}
+
+	private void update() {
+		updateGravity();
+		float norm = (float) Math.sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ);
+		float upX = norm > 0 ? gravityX / norm : 0;
+		float upY = norm > 0 ? gravityY / norm : 0;
+		float upZ = norm > 0 ? gravityZ / norm : 0;
+		// movement left once gravity is removed
+		float sum = 0;
+		for (int i = 0; i < count; ++i) {
+			float dx = x[i] - gravityX;
+			float dy = y[i] - gravityY;
+			float dz = z[i] - gravityZ;
+			magnitude[i] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			vertical[i] = dx * upX + dy * upY + dz * upZ;
+			sum += magnitude[i];
+		}
+		activity = count > 0 ? sum / count : 0;
+		detectSteps();
+	}
+
+	private void updateGravity() {
+		float sumX = 0, sumY = 0, sumZ = 0;
+		for (int i = 0; i < count; ++i) {
+			sumX += x[i];
+			sumY += y[i];
+			sumZ += z[i];
+		}
+		if (count == 0) return;
+		if (!calibrated) {
+			gravityX = sumX / count;
+			gravityY = sumY / count;
+			gravityZ = sumZ / count;
+			calibrated = true;
+			return;
+		}
+		gravityX += GRAVITY_WEIGHT * (sumX / count - gravityX);
+		gravityY += GRAVITY_WEIGHT * (sumY / count - gravityY);
+		gravityZ += GRAVITY_WEIGHT * (sumZ / count - gravityZ);
+	}
+
+	private void detectSteps() {
+		for (int i = 0; i < count; ++i, ++sampleIndex) {
+			if (armed && vertical[i] > STEP_HIGH) {
+				long last = stepCount > 0 ? stepAt[(stepCount - 1) % CADENCE_STEPS] : -MIN_STEP_SAMPLES;
+				if (sampleIndex - last >= MIN_STEP_SAMPLES) {
+					stepAt[stepCount % CADENCE_STEPS] = sampleIndex;
+					++stepCount;
+				}
+				armed = false;
+			} else if (vertical[i] < STEP_LOW) {
+				armed = true;
+			}
+		}
+		cadence = computeCadence();
+	}
+
+	private float computeCadence() {
+		if (stepCount < 2) return 0;
+		long last = stepAt[(stepCount - 1) % CADENCE_STEPS];
+		if (sampleIndex - last > STOPPED_SAMPLES) return 0;
+		int steps = Math.min(stepCount, CADENCE_STEPS);
+		long first = stepAt[(stepCount - steps) % CADENCE_STEPS];
+		return 60f * SAMPLE_RATE * (steps - 1) / (last - first);
+	}
+
+	public void reset() {
+		calibrated = false;
+		armed = true;
+		sampleIndex = 0;
+		stepCount = 0;
+		activity = 0;
+		cadence = 0;
+	}
+
+	// Mean magnitude of the movement over the last packet, in g
+	public float getActivity() {
+		return activity;
+	}
+
+	// Steps per minute, 0 when standing still
+	public float getCadence() {
+		return cadence;
+	}
+
+	// Steps since the connection started
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	// Magnitude of the movement of every sample of the last packet, valid until the next update
+	public float[] getMagnitudes() {
+		return magnitude;
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,23 @@
+package com.NewApp;
+
+import android.app.Application;
+
+/*
+ * The Android side of the bridge only: owns the Communicator for the life of
+ * the app. The Communicator itself is plain Java, so the pipeline also runs
+ * without Android, see SessionReplay.
+ */
+public class BridgeApplication extends Application {
+
+	private final Communicator communicator = new Communicator();
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		communicator.start();
+	}
+
+	public Communicator getCommunicator() {
+		return communicator;
+	}
+}
@@ -1,104 +1,760 @@
 package com.NewApp;
 
 import java.net.InetAddress;
-import com.illposed.osc.*;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
-import android.app.Application;
 import android.util.Log;
 
-public class Communicator extends Application {
+public class Communicator {
 	
 	private String host;
-	private String portin;
+	// port the receiver answers the /ready handshake on (SendToPort in BiometricInfo)
+	private String portin = "7773";
 	private String portout;
-	//Javaosc sender and receiver
-	OSCPortOut sender;
-	OSCPortIn receiver;
+	//network transports, see setTransport()
+	public enum Transport { DATAGRAM_SOCKET, DATAGRAM_CHANNEL }
+	private Transport transportType = Transport.DATAGRAM_CHANNEL;
+	OscTransport receiver;
+	//control messages coming back from the visualization, handled on their own thread
+	private final OscDispatcher dispatcher = new OscDispatcher();
+	private OscControlChannel controlChannel;
+	//metrics switched off with /control/stream/NAME 0
+	private final ConcurrentHashMap<String, Boolean> disabledStreams = new ConcurrentHashMap<String, Boolean>();
+	//last value of every metric, for /control/snapshot
+	private static class Latest {
+		volatile float value;
+		volatile boolean integer;
+	}
+	private final ConcurrentHashMap<String, Latest> latest = new ConcurrentHashMap<String, Latest>();
+	private static final Diagnostics.Tag SENDER = Diagnostics.tag("sender osc", 5);
+	private static final Diagnostics.Tag RECEIVER = Diagnostics.tag("receiver osc", 5);
+	private static final String SNAPSHOT_KEY = "/snapshot";
+	//decoded samples from the BioHarness listener, OSC is one of the consumers
+	private final SampleBus sampleBus = new SampleBus(1024);
+	private final OscSampleConsumer oscConsumer = new OscSampleConsumer(this);
+	//heart rate variability from the R to R intervals, fed on the listener thread
+	private final HrvEngine hrvEngine = new HrvEngine(60);
+	//packet types the BioHarness sends, from the streams enabled here
+	private final PacketDemand packetDemand = new PacketDemand(this);
+	private static final int[] ON_REQUEST_PACKETS = {PacketDemand.ECG, PacketDemand.RR, PacketDemand.ACCELEROMETER, PacketDemand.SUMMARY};
+	//raw packets of the current BioHarness session, null when not recording
+	private volatile SessionRecorder recorder;
+	//continuity of the Zephyr packet streams, fed on the listener thread
+	private final SequenceTracker[] sequenceTrackers = {
+		new SequenceTracker("GENERAL"), new SequenceTracker("BREATHING"), new SequenceTracker("ECG"),
+		new SequenceTracker("RR"), new SequenceTracker("ACCELEROMETER"), new SequenceTracker("SUMMARY")
+	};
+	private final OscEncoder.Template[] sequenceTemplates = new OscEncoder.Template[sequenceTrackers.length];
+	private static final String PACKET_STATS_KEY = "/stats/packets";
+	//CRC failed and short packets, rejected before decoding
+	private final PacketFilter packetFilter = new PacketFilter();
+	private static final OscEncoder.Template REJECTED = new OscEncoder.Template("/stats/rejected", ",ii");
+	//fill short Bluetooth gaps in the waveforms with SequenceTracker.GAP_MARKER
+	private volatile boolean gapFill = false;
+	//ECG waveform, batched on its own thread
+	private final EcgStream ecgStream = new EcgStream(this);
+	private final ConcurrentHashMap<Integer, OscEncoder.Template> ecgTemplates = new ConcurrentHashMap<Integer, OscEncoder.Template>();
+	//thread doing the actual sends, fed by a non blocking queue
+	volatile OscSender senderThread;
+	//TCP port for the waveforms (SLIP framed OSC), null to send everything over UDP
+	private String streamPort;
+	volatile OscSender streamSenderThread;
+	//addresses starting with one of these go over the stream when it is set up
+	private final CopyOnWriteArrayList<String> streamPrefixes = new CopyOnWriteArrayList<String>();
+	//summary packet telemetry, on its own low priority sender at most once a second
+	private static final OscEncoder.Template TELEMETRY = new OscEncoder.Template("/telemetry", TelemetryRecord.TYPES);
+	private String telemetryPort;
+	volatile OscSender telemetrySenderThread;
+	//more receivers getting a copy of everything sent to host, see addDestination()
+	private final CopyOnWriteArrayList<OscDestination> destinations = new CopyOnWriteArrayList<OscDestination>();
+	//address and type tags encoded once per metric
+	private static final OscEncoder.Template READY = new OscEncoder.Template("/ready", ",ssi");
+	private static final String GENERAL_PACKET_KEY = "/controller/GENERAL_PACKET";
+	private static final String[] GENERAL_PACKET_NAMES = {"HEART_RATE", "RESPIRATION_RATE", "SKIN_TEMPERATURE", "POSTURE", "PEAK_ACCLERATION"};
+	private final ConcurrentHashMap<String, OscEncoder.Template> intTemplates = new ConcurrentHashMap<String, OscEncoder.Template>();
+	private final ConcurrentHashMap<String, OscEncoder.Template> floatTemplates = new ConcurrentHashMap<String, OscEncoder.Template>();
+	private final ConcurrentHashMap<String, OscEncoder.Template> stringTemplates = new ConcurrentHashMap<String, OscEncoder.Template>();
+	private final ConcurrentHashMap<String, OscEncoder.Template> arrayTemplates = new ConcurrentHashMap<String, OscEncoder.Template>();
+	// Wire format of the values. Version 1 sends every value as a string, like the
+	// first receivers expect. Version 2 sends int32/float32 and int arrays. We offer
+	// WIRE_TYPED in /ready and switch once the receiver answers /ready with its version.
+	public static final int WIRE_STRINGS = 1;
+	public static final int WIRE_TYPED = 2;
+	private volatile int wireVersion = WIRE_STRINGS;
+	//change-only sending of the slow metrics
+	private final OscDeadband deadband = new OscDeadband();
+	private int sendQueueCapacity = 256;
+	private OscSendQueue.OverflowPolicy overflowPolicy = OscSendQueue.OverflowPolicy.DROP_OLDEST;
+	//periodic /stats to host, see setStatsInterval()
+	private static final OscEncoder.Template STATS = new OscEncoder.Template("/stats", ",iiiiiiii");
+	private int statsIntervalMillis = 5000;
+	private final Timer statsTimer = new Timer("OscStats", true);
+	private TimerTask statsTask;
 	//to know whenever the receiver or sender exist
 	private boolean receiverIs = false;
-	private boolean senderIs = false;
+	private volatile boolean senderIs = false;
+	
+	// Once, before anything else, see BridgeApplication
+	public void start() {
+		sampleBus.subscribe("OscSamples", oscConsumer);
+		ecgStream.start();
+		// only the general and breathing packets are decoded unasked, like the first receivers
+		// expect. The others (the ECG at 250 samples per second, R to R, accelerometer, summary)
+		// stay off on the device until a receiver asks with /control/stream/NAME 1
+		for (int type : ON_REQUEST_PACKETS) {
+			for (String stream : PacketDemand.streams(type)) {
+				disabledStreams.put(stream, Boolean.TRUE);
+			}
+		}
+		packetDemand.start();
+		for (int i = 0; i < sequenceTrackers.length; ++i) {
+			sequenceTemplates[i] = new OscEncoder.Template(PACKET_STATS_KEY + "/" + sequenceTrackers[i].getName(), ",iiii");
+		}
+		dispatcher.addHandler("/ready", new OscHandler() {
+			public void handle(OscInMessage message) {
+				negotiate(message);
+			}
+		});
+		// /control/stream/HEART_RATE 0 stops sending the heart rate, 1 starts again
+		dispatcher.addHandler("/control/stream/*", new OscHandler() {
+			public void handle(OscInMessage message) {
+				String address = message.getAddress();
+				setStreamEnabled(address.substring(address.lastIndexOf('/') + 1), message.getInt(0, 1) != 0);
+			}
+		});
+		// /control/rate 20 limits host to 20 datagrams per second, 0 removes the limit
+		dispatcher.addHandler("/control/rate", new OscHandler() {
+			public void handle(OscInMessage message) {
+				OscSender sender = senderThread;
+				if (sender != null) sender.setMaxPerSecond(message.getInt(0, 0));
+			}
+		});
+		// /control/snapshot sends the last value of every metric right away
+		dispatcher.addHandler("/control/snapshot", new OscHandler() {
+			public void handle(OscInMessage message) {
+				sendingSnapshot();
+			}
+		});
+		// the general packet comes every second, these rarely change between two
+		deadband.setBand("SKIN_TEMPERATURE", 0.1, 0, 5000);
+		deadband.setBand("POSTURE", 2, 0, 5000);
+		deadband.setBand("RESPIRATION_RATE", 0.2, 0, 5000);
+		// the waveforms lose chunks on busy networks, the scalars are resent anyway
+		streamPrefixes.add("/controller/BREATHING_RAW");
+		streamPrefixes.add("/ecg");
+	}
+	
+	private OscTransport newTransport(){
+		if (transportType == Transport.DATAGRAM_SOCKET) return new DatagramSocketTransport();
+		return new DatagramChannelTransport();
+	}
+	
+	// Multicast groups need a MulticastSocket to set the TTL
+	private OscTransport newTransport(String host) throws java.io.IOException{
+		if (OscDestination.isMulticast(host)) return new DatagramSocketTransport();
+		return newTransport();
+	}
 	
-	@Override
-    public void onCreate() {
-		super.onCreate();
+	// Takes effect on the next connect(), like the ports
+	public void setTransport(Transport type){
+		transportType = type;
+	}
+	
+	public Transport getTransport(){
+		return transportType;
 	}
 	
 	public void connect(){
 		if(!senderIs){
+			OscTransport transport = null, stream = null, telemetry = null;
+			OscSender sender = null, streamSender = null, telemetrySender = null;
 			try {
-				sender = new OSCPortOut(InetAddress.getByName(host), Integer.parseInt(portout));
+				InetAddress address = InetAddress.getByName(host);
+				// every transport opened before any thread starts, so a failure leaves nothing running
+				transport = newTransport(host);
+				transport.open(address, Integer.parseInt(portout));
+				if (streamPort != null) {
+					stream = new TcpSlipTransport();
+					stream.open(address, Integer.parseInt(streamPort));
+				}
+				telemetry = newTransport(host);
+				telemetry.open(address, Integer.parseInt(telemetryPort != null ? telemetryPort : portout));
+				sender = new OscSender(new OscSendQueue(sendQueueCapacity, overflowPolicy), transport);
+				sender.start();
+				if (stream != null) {
+					streamSender = new OscSender("OscStreamSender", new OscSendQueue(sendQueueCapacity, OscSendQueue.OverflowPolicy.DROP_OLDEST), stream);
+					streamSender.start();
+				}
+				// latest value wins, so a late record is replaced rather than queued
+				telemetrySender = new OscSender("OscTelemetry", new OscSendQueue(4, OscSendQueue.OverflowPolicy.LATEST_VALUE_WINS), telemetry);
+				telemetrySender.setMaxPerSecond(1);
+				telemetrySender.setPriority(Thread.MIN_PRIORITY);
+				telemetrySender.start();
+				senderThread = sender;
+				streamSenderThread = streamSender;
+				telemetrySenderThread = telemetrySender;
 				senderIs = true;
-				Log.e("connecting to", InetAddress.getByName(host).toString());
-				OSCMessage msg = new OSCMessage("/ready");
-				msg.addArgument(host);
-				msg.addArgument(portout);
-				if (msg != null) {
-					try {
-						sender.send(msg);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
+				// until the receiver tells us otherwise it only understands strings
+				wireVersion = WIRE_STRINGS;
+				// a new receiver needs every value once
+				deadband.reset();
+				Diagnostics.log(SENDER, Log.INFO, "connecting to", address);
+				OscFrame frame = senderThread.obtain();
+				if (frame != null) {
+					frame.begin(READY).add(host).add(portout).add(WIRE_TYPED);
+					// only to host, the extra destinations follow its wire version
+					senderThread.enqueue(frame);
 				}
 				
 			} catch (Exception e) {
-				Log.i("sender osc", e.toString());
+				// a started sender closes its transport itself, the others are closed here
+				stopOrClose(sender, transport);
+				stopOrClose(streamSender, stream);
+				stopOrClose(telemetrySender, telemetry);
+				senderIs = false;
+				Diagnostics.log(SENDER, Log.INFO, "connect failed", e);
 			}
 		}
 		
+		for (OscDestination destination : destinations) {
+			startDestination(destination);
+		}
+		scheduleStats();
+		
 		if(!receiverIs){
 			try {
-				receiver = new OSCPortIn(Integer.parseInt(portin));
+				controlChannel = new OscControlChannel(dispatcher);
+				receiver = newTransport();
+				receiver.listen(Integer.parseInt(portin), controlChannel);
+				controlChannel.start();
 				receiverIs = true;
 			} catch (Exception e) {
-				Log.i("receiver osc", e.toString());
+				Diagnostics.log(RECEIVER, Log.INFO, "listen failed", e);
 			}
 		}
 	}
 	
+	private static void stopOrClose(OscSender sender, OscTransport transport){
+		if (sender != null && sender.isAlive()) sender.shutdown();
+		else if (transport != null) transport.close();
+	}
+	
 	public void close(){
-		if (senderIs){
-			sender.close();
+		closeSender();
+		for (OscDestination destination : destinations) {
+			destination.stop();
 		}
+		closeReceiver();
+	}
+	
+	// Adds a receiver (or an IPv4 multicast group) getting a copy of every message,
+	// with its own queue and at most maxPerSecond datagrams (0 for no limit)
+	public void addDestination(String host, int port, int maxPerSecond){
+		OscDestination destination = new OscDestination(host, port, maxPerSecond);
+		destinations.add(destination);
+		if (senderIs) startDestination(destination);
+	}
+	
+	public void removeDestination(String host, int port){
+		for (OscDestination destination : destinations) {
+			if (destination.matches(host, port)) {
+				destinations.remove(destination);
+				destination.stop();
+			}
+		}
+	}
+	
+	public java.util.List<OscDestination> getDestinations(){
+		return destinations;
+	}
+	
+	private void startDestination(OscDestination destination){
+		if (destination.isStarted()) return;
+		try {
+			destination.start(newTransport(destination.getHost()), sendQueueCapacity, overflowPolicy);
+		} catch (Exception e) {
+			// one bad destination must not stop the others
+			Diagnostics.log(SENDER, Log.INFO, destination.getHost(), e);
+		}
+	}
+	
+	private void closeReceiver(){
 		if (receiverIs){
 			receiver.close();
+			controlChannel.shutdown();
+		}
+		receiverIs = false;
+	}
+	
+	private void closeSender(){
+		cancelStats();
+		if (senderIs){
+			// the sender thread closes the socket once it has stopped
+			senderThread.shutdown();
+			OscSender stream = streamSenderThread;
+			streamSenderThread = null;
+			if (stream != null) stream.shutdown();
+			OscSender telemetry = telemetrySenderThread;
+			telemetrySenderThread = null;
+			if (telemetry != null) telemetry.shutdown();
 		}
+		senderIs = false;
+	}
+	
+	// Answer of the receiver to /ready, carrying the highest wire version it understands
+	private void negotiate(OscInMessage message){
+		int version = message.getInt(0, WIRE_STRINGS);
+		wireVersion = Math.max(WIRE_STRINGS, Math.min(WIRE_TYPED, version));
+		Diagnostics.Entry entry = Diagnostics.begin(RECEIVER, Log.INFO, "negotiated wire");
+		if (entry != null) entry.add("version", wireVersion).commit();
+	}
+	
+	// Registers a handler for messages coming back on portin, run on the control thread
+	public void addControlHandler(String address, OscHandler handler){
+		dispatcher.addHandler(address, handler);
+	}
+	
+	public void setStreamEnabled(String name, boolean enabled){
+		if (enabled) disabledStreams.remove(name);
+		else disabledStreams.put(name, Boolean.TRUE);
+		Diagnostics.log(RECEIVER, Log.INFO, enabled ? "enabled" : "disabled", name);
+		packetDemand.update();
+	}
+	
+	public boolean isStreamEnabled(String name){
+		return !disabledStreams.containsKey(name);
+	}
+	
+	private void remember(String name, float value, boolean integer){
+		Latest last = latest.get(name);
+		if (last == null) {
+			last = new Latest();
+			latest.put(name, last);
+		}
+		last.value = value;
+		last.integer = integer;
+	}
+	
+	// Counters of every sender since connect(), summed
+	public OscStats getStats(){
+		OscStats stats = new OscStats();
+		if (senderIs) {
+			stats.add(senderThread);
+			stats.add(streamSenderThread);
+			stats.add(telemetrySenderThread);
+		}
+		for (OscDestination destination : destinations) {
+			stats.add(destination.getSender());
+		}
+		return stats;
+	}
+	
+	// Every statsIntervalMillis host gets /stats with enqueued, sent, dropped and
+	// failed messages, kilobytes sent and the p50, p99 and max send call in microseconds.
+	// It is followed by a /stats/packets bundle with received, missing, duplicate and
+	// late packets of every Zephyr stream, e.g. /stats/packets/ECG, and by /stats/rejected
+	// with the packets whose CRC failed and the too short ones. 0 stops it
+	public void setStatsInterval(int millis){
+		statsIntervalMillis = millis;
+		scheduleStats();
+	}
+	
+	public int getStatsInterval(){
+		return statsIntervalMillis;
+	}
+	
+	private synchronized void scheduleStats(){
+		cancelStats();
+		if (!senderIs || statsIntervalMillis <= 0) return;
+		statsTask = new TimerTask() {
+			public void run() {
+				sendingStats();
+			}
+		};
+		statsTimer.schedule(statsTask, statsIntervalMillis, statsIntervalMillis);
+	}
+	
+	private synchronized void cancelStats(){
+		if (statsTask != null) statsTask.cancel();
+		statsTask = null;
+	}
+	
+	private void sendingStats(){
+		OscFrame frame = obtain(STATS.getAddress());
+		if (frame == null) return;
+		OscStats stats = getStats();
+		frame.begin(STATS).add((int) stats.getEnqueued()).add((int) stats.getSent()).add((int) stats.getDropped()).add((int) stats.getFailed());
+		frame.add((int) (stats.getBytes() / 1024));
+		frame.add((int) (stats.getSendNanos(0.5) / 1000)).add((int) (stats.getSendNanos(0.99) / 1000)).add((int) (stats.getSendNanos(1) / 1000));
+		// only to host, like /ready
+		senderFor(frame.getKey()).enqueue(frame);
+		
+		// what was lost over Bluetooth, before the senders
+		frame = obtain(PACKET_STATS_KEY);
+		if (frame == null) return;
+		frame.beginBundle(PACKET_STATS_KEY, System.currentTimeMillis());
+		for (int i = 0; i < sequenceTrackers.length; ++i) {
+			SequenceTracker tracker = sequenceTrackers[i];
+			frame.message(sequenceTemplates[i]).add((int) tracker.getReceived()).add((int) tracker.getMissing());
+			frame.add((int) tracker.getDuplicates()).add((int) tracker.getLate());
+		}
+		senderFor(frame.getKey()).enqueue(frame);
+		
+		frame = obtain(REJECTED.getAddress());
+		if (frame == null) return;
+		frame.begin(REJECTED).add((int) packetFilter.getCrcFailures()).add((int) packetFilter.getTooShort());
+		senderFor(frame.getKey()).enqueue(frame);
+	}
+	
+	// The last value of every enabled metric, in as few bundles as needed
+	private void sendingSnapshot(){
+		boolean typed = wireVersion >= WIRE_TYPED;
+		OscFrame frame = null;
+		for (Map.Entry<String, Latest> entry : latest.entrySet()) {
+			if (!isStreamEnabled(entry.getKey())) continue;
+			if (frame != null && frame.getMessageCount() == OscFrame.MAX_MESSAGES) {
+				publish(frame);
+				frame = null;
+			}
+			if (frame == null) {
+				frame = obtain(SNAPSHOT_KEY);
+				if (frame == null) return;
+				frame.beginBundle(SNAPSHOT_KEY, System.currentTimeMillis());
+			}
+			Latest last = entry.getValue();
+			if (last.integer) addValue(frame, entry.getKey(), (int) last.value, typed);
+			else addValue(frame, entry.getKey(), last.value, typed);
+		}
+		if (frame != null) publish(frame);
 	}
 	
 	public void sending(String name, int value){
-		try {
-			OSCMessage msg = new OSCMessage("/controller/"+name);
-			msg.addArgument(value);
-			if (msg != null) {
-				try {
-					sender.send(msg);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+		if (!isStreamEnabled(name)) return;
+		remember(name, value, true);
+		long now = System.currentTimeMillis();
+		if (!deadband.accept(name, value, now)) return;
+		boolean typed = wireVersion >= WIRE_TYPED;
+		OscEncoder.Template template = typed ? template(intTemplates, name, ",i") : template(stringTemplates, name, ",s");
+		OscFrame frame = obtain(template.getAddress());
+		// not taken as sent, the next value inside the band still goes out
+		if (frame == null) return;
+		if (typed) frame.begin(template).add(value);
+		else frame.begin(template).add(String.valueOf(value));
+		publish(frame);
+		deadband.sent(name, value, now);
+	}
+	
+	public void sending(String name, float value){
+		if (!isStreamEnabled(name)) return;
+		remember(name, value, false);
+		long now = System.currentTimeMillis();
+		if (!deadband.accept(name, value, now)) return;
+		boolean typed = wireVersion >= WIRE_TYPED;
+		OscEncoder.Template template = typed ? template(floatTemplates, name, ",f") : template(stringTemplates, name, ",s");
+		OscFrame frame = obtain(template.getAddress());
+		// not taken as sent, the next value inside the band still goes out
+		if (frame == null) return;
+		if (typed) frame.begin(template).add(value);
+		else frame.begin(template).add(String.valueOf(value));
+		publish(frame);
+		deadband.sent(name, value, now);
+	}
+	
+	// Raw samples go out as one int per sample, or space separated for old receivers
+	public void sending(String name, short[] samples){
+		sending(name, samples, samples.length);
+	}
+	
+	// The first count samples only, so the array can be reused
+	public void sending(String name, short[] samples, int count){
+		if (!isStreamEnabled(name)) return;
+		if (wireVersion < WIRE_TYPED) {
+			StringBuilder result = new StringBuilder(count * 6);
+			for (int i = 0; i < count; ++i) {
+				result.append(samples[i]).append(' ');
 			}
-			
-		} catch (Exception e) {
-			Log.i("sender osc", e.toString());
+			sending(name, result.toString());
+			return;
+		}
+		count = Math.min(count, OscFrame.MAX_ARGS);
+		OscEncoder.Template template = arrayTemplate(name, count);
+		OscFrame frame = obtain(template.getAddress());
+		if (frame == null) return;
+		frame.begin(template);
+		for (int i = 0; i < count; ++i) {
+			frame.add(samples[i]);
 		}
+		publish(frame);
+	}
+	
+	// /ecg with the index of the first sample, then the samples, always typed since
+	// no string receiver knows it. Switched off with /control/stream/ECG 0
+	public void sendingEcg(int index, short[] samples, int count){
+		if (!isStreamEnabled("ECG")) return;
+		OscEncoder.Template template = ecgTemplates.get(count);
+		if (template == null) {
+			StringBuilder types = new StringBuilder(",i");
+			for (int i = 0; i < count; ++i) {
+				types.append('i');
+			}
+			template = new OscEncoder.Template("/ecg", types.toString());
+			ecgTemplates.put(count, template);
+		}
+		OscFrame frame = obtain(template.getAddress());
+		if (frame == null) return;
+		frame.begin(template).add(index);
+		for (int i = 0; i < count; ++i) {
+			frame.add(samples[i]);
+		}
+		publish(frame);
+	}
+	
+	// The summary packet as one /telemetry message, only to host and never to the
+	// extra destinations. Off until /control/stream/TELEMETRY 1
+	public void sendingTelemetry(TelemetryRecord record){
+		OscSender sender = telemetrySenderThread;
+		if (sender == null || !isStreamEnabled("TELEMETRY")) return;
+		OscFrame frame = sender.obtain();
+		if (frame == null) return;
+		frame.begin(TELEMETRY);
+		record.addTo(frame);
+		sender.enqueue(frame);
 	}
 	
 	public void sending(String name, String value){
-		try {
-			OSCMessage msg = new OSCMessage("/controller/"+name);
-			msg.addArgument(value);
-			if (msg != null) {
-				try {
-					sender.send(msg);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+		if (!isStreamEnabled(name)) return;
+		OscEncoder.Template template = template(stringTemplates, name, ",s");
+		OscFrame frame = obtain(template.getAddress());
+		if (frame == null) return;
+		frame.begin(template).add(value);
+		publish(frame);
+	}
+	
+	// Sends the metrics of one general packet as one OSC bundle timetagged with timeMillis (wall clock).
+	// Metrics inside their deadband are left out, and nothing is sent if all of them are
+	public void sendingGeneralPacket(long timeMillis, int heartRate, float respirationRate, float skinTemperature, int posture, float peakAcceleration){
+		long now = System.currentTimeMillis();
+		remember(GENERAL_PACKET_NAMES[0], heartRate, true);
+		remember(GENERAL_PACKET_NAMES[1], respirationRate, false);
+		remember(GENERAL_PACKET_NAMES[2], skinTemperature, false);
+		remember(GENERAL_PACKET_NAMES[3], posture, true);
+		remember(GENERAL_PACKET_NAMES[4], peakAcceleration, false);
+		boolean sendHeartRate = isStreamEnabled(GENERAL_PACKET_NAMES[0]) && deadband.accept(GENERAL_PACKET_NAMES[0], heartRate, now);
+		boolean sendRespirationRate = isStreamEnabled(GENERAL_PACKET_NAMES[1]) && deadband.accept(GENERAL_PACKET_NAMES[1], respirationRate, now);
+		boolean sendSkinTemperature = isStreamEnabled(GENERAL_PACKET_NAMES[2]) && deadband.accept(GENERAL_PACKET_NAMES[2], skinTemperature, now);
+		boolean sendPosture = isStreamEnabled(GENERAL_PACKET_NAMES[3]) && deadband.accept(GENERAL_PACKET_NAMES[3], posture, now);
+		boolean sendPeakAcceleration = isStreamEnabled(GENERAL_PACKET_NAMES[4]) && deadband.accept(GENERAL_PACKET_NAMES[4], peakAcceleration, now);
+		if (!(sendHeartRate || sendRespirationRate || sendSkinTemperature || sendPosture || sendPeakAcceleration)) return;
+		OscFrame frame = obtain(GENERAL_PACKET_KEY);
+		if (frame == null) return;
+		frame.beginBundle(GENERAL_PACKET_KEY, timeMillis);
+		boolean typed = wireVersion >= WIRE_TYPED;
+		if (sendHeartRate) addValue(frame, GENERAL_PACKET_NAMES[0], heartRate, typed);
+		if (sendRespirationRate) addValue(frame, GENERAL_PACKET_NAMES[1], respirationRate, typed);
+		if (sendSkinTemperature) addValue(frame, GENERAL_PACKET_NAMES[2], skinTemperature, typed);
+		if (sendPosture) addValue(frame, GENERAL_PACKET_NAMES[3], posture, typed);
+		if (sendPeakAcceleration) addValue(frame, GENERAL_PACKET_NAMES[4], peakAcceleration, typed);
+		publish(frame);
+		if (sendHeartRate) deadband.sent(GENERAL_PACKET_NAMES[0], heartRate, now);
+		if (sendRespirationRate) deadband.sent(GENERAL_PACKET_NAMES[1], respirationRate, now);
+		if (sendSkinTemperature) deadband.sent(GENERAL_PACKET_NAMES[2], skinTemperature, now);
+		if (sendPosture) deadband.sent(GENERAL_PACKET_NAMES[3], posture, now);
+		if (sendPeakAcceleration) deadband.sent(GENERAL_PACKET_NAMES[4], peakAcceleration, now);
+	}
+	
+	private void addValue(OscFrame frame, String name, int value, boolean typed){
+		if (typed) frame.message(template(intTemplates, name, ",i")).add(value);
+		else frame.message(template(stringTemplates, name, ",s")).add(String.valueOf(value));
+	}
+	
+	private void addValue(OscFrame frame, String name, float value, boolean typed){
+		if (typed) frame.message(template(floatTemplates, name, ",f")).add(value);
+		else frame.message(template(stringTemplates, name, ",s")).add(String.valueOf(value));
+	}
+	
+	// Hands the frame to every destination, never blocks
+	private void publish(OscFrame frame){
+		for (OscDestination destination : destinations) {
+			destination.send(frame);
+		}
+		// last, the frame belongs to the sender thread once enqueued
+		senderFor(frame.getKey()).enqueue(frame);
+	}
+	
+	// Never blocks, returns null when not connected or when the queue drops the message
+	private OscFrame obtain(String address){
+		if (!senderIs) return null;
+		return senderFor(address).obtain();
+	}
+	
+	// The stream sender for the waveform prefixes when it runs, host over UDP otherwise
+	private OscSender senderFor(String address){
+		OscSender stream = streamSenderThread;
+		if (stream != null) {
+			for (String prefix : streamPrefixes) {
+				if (address.startsWith(prefix)) return stream;
 			}
-			
-		} catch (Exception e) {
-			Log.i("sender osc", e.toString());
 		}
+		return senderThread;
+	}
+	
+	// The /controller/ address of a metric, only built the first time it is sent
+	private OscEncoder.Template template(ConcurrentHashMap<String, OscEncoder.Template> cache, String name, String types){
+		OscEncoder.Template template = cache.get(name);
+		if (template == null) {
+			template = new OscEncoder.Template("/controller/"+name, types);
+			cache.put(name, template);
+		}
+		return template;
+	}
+	
+	// ",iii..." with one int per sample, rebuilt only when the sample count changes
+	private OscEncoder.Template arrayTemplate(String name, int count){
+		OscEncoder.Template template = arrayTemplates.get(name);
+		if (template == null || template.getTypes().length() != count + 1) {
+			StringBuilder types = new StringBuilder(",");
+			for (int i = 0; i < count; ++i) {
+				types.append('i');
+			}
+			template = new OscEncoder.Template("/controller/"+name, types.toString());
+			arrayTemplates.put(name, template);
+		}
+		return template;
+	}
+	
+	// The listener publishes here, see SampleBus.subscribe() for more consumers
+	public SampleBus getSampleBus(){
+		return sampleBus;
+	}
+	
+	public OscSampleConsumer getOscConsumer(){
+		return oscConsumer;
+	}
+	
+	// GENERAL, BREATHING, ECG, RR, ACCELEROMETER or SUMMARY, null for another name
+	public SequenceTracker getSequenceTracker(String name){
+		for (SequenceTracker tracker : sequenceTrackers) {
+			if (tracker.getName().equals(name)) return tracker;
+		}
+		return null;
+	}
+	
+	public SequenceTracker[] getSequenceTrackers(){
+		return sequenceTrackers;
+	}
+	
+	// Rejection counts by message id, and the quarantine of the last bad packets
+	public PacketFilter getPacketFilter(){
+		return packetFilter;
+	}
+	
+	// When set, up to EcgStream.MAX_FILL_PACKETS missing waveform packets are
+	// replaced by as many SequenceTracker.GAP_MARKER samples
+	public void setGapFill(boolean fill){
+		gapFill = fill;
+	}
+	
+	public boolean isGapFill(){
+		return gapFill;
+	}
+	
+	// Records the raw packets of the session into segment files in directory,
+	// the files are created on the recorder thread
+	public void startRecording(java.io.File directory){
+		stopRecording();
+		SessionRecorder started = new SessionRecorder(directory);
+		started.start();
+		recorder = started;
+	}
+	
+	public void stopRecording(){
+		SessionRecorder stopped = recorder;
+		recorder = null;
+		if (stopped != null) stopped.close();
+	}
+	
+	// Null when not recording
+	public SessionRecorder getRecorder(){
+		return recorder;
+	}
+	
+	public PacketDemand getPacketDemand(){
+		return packetDemand;
+	}
+	
+	// setWindow() to change the number of beats
+	public HrvEngine getHrvEngine(){
+		return hrvEngine;
+	}
+	
+	// Batch size and flush interval of /ecg
+	public EcgStream getEcgStream(){
+		return ecgStream;
+	}
+	
+	// Bands are per metric name, e.g. "SKIN_TEMPERATURE"
+	public OscDeadband getDeadband(){
+		return deadband;
+	}
+	
+	public int getWireVersion(){
+		return wireVersion;
+	}
+	
+	public OscSendQueue getSendQueue(){
+		return senderIs ? senderThread.getQueue() : null;
+	}
+	
+	// Both take effect on the next connect()
+	public void setSendQueueCapacity(int capacity){
+		sendQueueCapacity = capacity;
+	}
+	
+	public void setOverflowPolicy(OscSendQueue.OverflowPolicy policy){
+		overflowPolicy = policy;
 	}
 	
 	
+	// TCP port of the SLIP framed stream to host, null to send everything over UDP.
+	// Takes effect on the next connect(), like the ports
+	public void setStreamPort(String s){
+		streamPort = s;
+		closeSender();
+	}
+	
+	public String getStreamPort(){
+		return streamPort;
+	}
+	
+	// Port on host the /telemetry messages go to, so a receiver can take them
+	// without the high rate streams. null for portout. Takes effect on the next connect()
+	public void setTelemetryPort(String s){
+		telemetryPort = s;
+		closeSender();
+	}
+	
+	public String getTelemetryPort(){
+		return telemetryPort;
+	}
+	
+	// e.g. "/controller/BREATHING_RAW", the extra destinations stay on UDP
+	public void addStreamPrefix(String prefix){
+		streamPrefixes.addIfAbsent(prefix);
+	}
+	
+	public void removeStreamPrefix(String prefix){
+		streamPrefixes.remove(prefix);
+	}
+	
+	public OscSendQueue getStreamQueue(){
+		OscSender stream = streamSenderThread;
+		return stream != null ? stream.getQueue() : null;
+	}
+	
 	public boolean receiverIs(){
 		return receiverIs;
 	}
@@ -113,8 +769,7 @@ public class Communicator extends Application {
 	
 	public void setHost(String s){
 	    host = s;
-	    if (senderIs) sender.close();
-	    senderIs = false;
+	    closeSender();
 	}
 	
 	public String getPortin(){
@@ -123,8 +778,7 @@ public class Communicator extends Application {
 	
 	public void setPortin(String s){
 		portin = s;
-		if(receiverIs) receiver.close();
-		receiverIs = false;
+		closeReceiver();
 	}
 	
 	public String getPortout(){
@@ -133,8 +787,7 @@ public class Communicator extends Application {
 	
 	public void setPortout(String s){
 		portout = s;
-		if (senderIs) sender.close();
-	    senderIs = false;
+		closeSender();
 	}
 	
 	
@@ -0,0 +1,93 @@
+package com.NewApp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import android.util.Log;
+
+/*
+ * NIO transport. Sending uses a connected channel so the destination is only
+ * checked once, receiving runs a selector loop on its own thread and reads into
+ * a single direct buffer.
+ */
+public class DatagramChannelTransport implements OscTransport {
+
+	public static final int MAX_PACKET_SIZE = 8192;
+
+	private static final Diagnostics.Tag SENDER = Diagnostics.tag("sender osc", 5);
+	private static final Diagnostics.Tag RECEIVER = Diagnostics.tag("receiver osc", 5);
+
+	private DatagramChannel sendChannel;
+	private DatagramChannel receiveChannel;
+	private Selector selector;
+	private Thread receiveThread;
+	private volatile boolean listening = false;
+
+	public void open(InetAddress address, int port) throws IOException {
+		sendChannel = DatagramChannel.open();
+		sendChannel.connect(new InetSocketAddress(address, port));
+	}
+
+	public void send(ByteBuffer packet) throws IOException {
+		sendChannel.write(packet);
+	}
+
+	public void flush() {
+		// every datagram is sent right away
+	}
+
+	public void listen(int port, final Listener listener) throws IOException {
+		receiveChannel = DatagramChannel.open();
+		receiveChannel.configureBlocking(false);
+		receiveChannel.socket().bind(new InetSocketAddress(port));
+		selector = Selector.open();
+		receiveChannel.register(selector, SelectionKey.OP_READ);
+		listening = true;
+		receiveThread = new Thread("OscReceiver") {
+			@Override
+			public void run() {
+				receiveLoop(listener);
+			}
+		};
+		receiveThread.setDaemon(true);
+		receiveThread.start();
+	}
+
+	private void receiveLoop(Listener listener) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+		while (listening) {
+			try {
+				if (selector.select() == 0) continue;
+				selector.selectedKeys().clear();
+				// drain everything that arrived before going back to select
+				while (true) {
+					buffer.clear();
+					if (receiveChannel.receive(buffer) == null) break;
+					buffer.flip();
+					listener.received(buffer);
+				}
+			} catch (IOException e) {
+				if (listening) Diagnostics.log(RECEIVER, Log.INFO, "receive failed", e);
+			} catch (RuntimeException e) {
+				// a closed selector throws ClosedSelectorException on the way out
+				if (listening) Diagnostics.log(RECEIVER, Log.INFO, "receive failed", e);
+			}
+		}
+	}
+
+	public void close() {
+		listening = false;
+		try {
+			if (sendChannel != null) sendChannel.close();
+			if (selector != null) selector.wakeup().close();
+			if (receiveChannel != null) receiveChannel.close();
+		} catch (IOException e) {
+			Diagnostics.log(SENDER, Log.INFO, "close failed", e);
+		}
+	}
+}
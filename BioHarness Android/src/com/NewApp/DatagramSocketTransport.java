@@ -0,0 +1,97 @@
+package com.NewApp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+import android.util.Log;
+
+/*
+ * Blocking java.net transport, the way the javaosc ports work. Kept as the
+ * fallback and as the baseline to compare DatagramChannelTransport against.
+ * Also used for IPv4 multicast groups, which need a MulticastSocket for the TTL.
+ */
+public class DatagramSocketTransport implements OscTransport {
+
+	public static final int MAX_PACKET_SIZE = 8192;
+
+	private static final Diagnostics.Tag RECEIVER = Diagnostics.tag("receiver osc", 5);
+
+	private DatagramSocket sendSocket;
+	private final byte[] sendBytes = new byte[MAX_PACKET_SIZE];
+	private DatagramPacket sendPacket;
+	private DatagramSocket receiveSocket;
+	private volatile boolean listening = false;
+	// 1 keeps multicast on the local network
+	private int multicastTtl = 1;
+
+	public void setMulticastTtl(int ttl) {
+		multicastTtl = ttl;
+	}
+
+	public void open(InetAddress address, int port) throws IOException {
+		if (address.isMulticastAddress()) {
+			MulticastSocket socket = new MulticastSocket();
+			socket.setTimeToLive(multicastTtl);
+			sendSocket = socket;
+		} else {
+			sendSocket = new DatagramSocket();
+		}
+		sendPacket = new DatagramPacket(sendBytes, 0, address, port);
+	}
+
+	public void send(ByteBuffer packet) throws IOException {
+		int length = packet.remaining();
+		packet.get(sendBytes, 0, length);
+		sendPacket.setLength(length);
+		sendSocket.send(sendPacket);
+	}
+
+	public void flush() {
+		// every datagram is sent right away
+	}
+
+	public void listen(int port, final Listener listener) throws IOException {
+		receiveSocket = new DatagramSocket(port);
+		listening = true;
+		Thread receiveThread = new Thread("OscReceiver") {
+			@Override
+			public void run() {
+				receiveLoop(listener);
+			}
+		};
+		receiveThread.setDaemon(true);
+		receiveThread.start();
+	}
+
+	private void receiveLoop(Listener listener) {
+		byte[] bytes = new byte[MAX_PACKET_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+		while (listening) {
+			try {
+				packet.setLength(bytes.length);
+				receiveSocket.receive(packet);
+				buffer.clear();
+				buffer.limit(packet.getLength());
+				listener.received(buffer);
+			} catch (SocketException e) {
+				// closed
+			} catch (IOException e) {
+				Diagnostics.log(RECEIVER, Log.INFO, "receive failed", e);
+			} catch (RuntimeException e) {
+				Diagnostics.log(RECEIVER, Log.INFO, "receive failed", e);
+			}
+		}
+	}
+
+	public void close() {
+		listening = false;
+		if (sendSocket != null) sendSocket.close();
+		if (receiveSocket != null) receiveSocket.close();
+	}
+}
@@ -0,0 +1,251 @@
+package com.NewApp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+/*
+ * Logging for the bridge that stays off the hot path. A message is a constant
+ * text and a few key/value pairs written into a preallocated entry, handed to a
+ * background writer through a lock-free queue, and only turned into a String and
+ * written to the Android log on that thread. The caller never formats, never
+ * takes the log lock and never waits: with the pool empty the entry is dropped.
+ *
+ * Every tag has a rate limit, what goes over it is counted and reported with the
+ * next entry of the tag. Under the level, begin() is a field read and returns
+ * null, so a disabled call costs nothing:
+ *
+ *	Diagnostics.Entry entry = Diagnostics.begin(TAG, Log.DEBUG, "general packet");
+ *	if (entry != null) entry.add("hr", heartRate).add("rr", respirationRate).commit();
+ */
+public final class Diagnostics {
+
+	public static final int MAX_VALUES = 8;
+	private static final int POOL_SIZE = 256;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// Log.VERBOSE to Log.ASSERT, anything above Log.ASSERT turns everything off
+	private static volatile int level = Log.INFO;
+
+	private static final Map<String, Tag> tags = new HashMap<String, Tag>();
+	private static final RingBuffer<Entry> free = new RingBuffer<Entry>(POOL_SIZE);
+	private static final RingBuffer<Entry> pending = new RingBuffer<Entry>(POOL_SIZE);
+	private static final AtomicLong dropped = new AtomicLong();
+	private static final Writer writer = new Writer();
+
+	static {
+		for (int i = 0; i < POOL_SIZE; ++i) {
+			free.offer(new Entry());
+		}
+		writer.start();
+	}
+
+	public static class Tag {
+		private final String name;
+		private volatile int perSecond;
+		private volatile long windowStart = System.nanoTime();
+		private final AtomicInteger inWindow = new AtomicInteger();
+		private final AtomicLong suppressed = new AtomicLong();
+		private long unreported = 0;
+
+		private Tag(String name, int perSecond) {
+			this.name = name;
+			this.perSecond = perSecond;
+		}
+
+		boolean allow() {
+			long now = System.nanoTime();
+			long start = windowStart;
+			if (now - start >= SECOND_NANOS) {
+				// a race here only lets a few more through
+				windowStart = now;
+				inWindow.set(0);
+			}
+			if (inWindow.incrementAndGet() <= perSecond) return true;
+			suppressed.incrementAndGet();
+			return false;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setPerSecond(int perSecond) {
+			this.perSecond = perSecond;
+		}
+
+		// Entries over the rate limit since the start
+		public long getSuppressed() {
+			return suppressed.get();
+		}
+	}
+
+	public static class Entry {
+		private Tag tag;
+		private int priority;
+		private String message;
+		private final String[] keys = new String[MAX_VALUES];
+		private final double[] values = new double[MAX_VALUES];
+		private final boolean[] integer = new boolean[MAX_VALUES];
+		private Object detail;
+		private int count;
+
+		public Entry add(String key, double value) {
+			return add(key, value, false);
+		}
+
+		public Entry add(String key, long value) {
+			return add(key, value, true);
+		}
+
+		private Entry add(String key, double value, boolean isInteger) {
+			if (count < MAX_VALUES) {
+				keys[count] = key;
+				values[count] = value;
+				integer[count] = isInteger;
+				++count;
+			}
+			return this;
+		}
+
+		// Turned into a String by the writer, e.g. an exception
+		public Entry detail(Object detail) {
+			this.detail = detail;
+			return this;
+		}
+
+		public void commit() {
+			// the pool holds as many entries as the queue, it always fits
+			pending.offer(this);
+		}
+	}
+
+	private Diagnostics() {
+	}
+
+	// Tags are created once, usually in a static field, the name is the Android log tag
+	public static synchronized Tag tag(String name, int perSecond) {
+		Tag tag = tags.get(name);
+		if (tag == null) {
+			tag = new Tag(name, perSecond);
+			tags.put(name, tag);
+		}
+		return tag;
+	}
+
+	public static boolean isLoggable(int priority) {
+		return priority >= level;
+	}
+
+	// Returns null when priority is under the level, the tag is over its rate or the pool is empty
+	public static Entry begin(Tag tag, int priority, String message) {
+		if (priority < level || !tag.allow()) return null;
+		Entry entry = free.poll();
+		if (entry == null) {
+			dropped.incrementAndGet();
+			return null;
+		}
+		entry.tag = tag;
+		entry.priority = priority;
+		entry.message = message;
+		entry.detail = null;
+		entry.count = 0;
+		return entry;
+	}
+
+	public static void log(Tag tag, int priority, String message) {
+		Entry entry = begin(tag, priority, message);
+		if (entry != null) entry.commit();
+	}
+
+	public static void log(Tag tag, int priority, String message, Object detail) {
+		Entry entry = begin(tag, priority, message);
+		if (entry != null) entry.detail(detail).commit();
+	}
+
+	public static void setLevel(int priority) {
+		level = priority;
+	}
+
+	public static int getLevel() {
+		return level;
+	}
+
+	// Entries lost because the writer was behind
+	public static long getDropped() {
+		return dropped.get();
+	}
+
+	private static class Writer extends Thread {
+		private final StringBuilder text = new StringBuilder(256);
+		// off the phone, e.g. SessionReplay, there is no Android log
+		private boolean android = true;
+
+		Writer() {
+			super("Diagnostics");
+			setDaemon(true);
+			setPriority(Thread.MIN_PRIORITY);
+		}
+
+		public void run() {
+			while (true) {
+				Entry entry = pending.poll();
+				if (entry == null) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+					continue;
+				}
+				try {
+					write(entry.priority, entry.tag.name, format(entry));
+				} catch (Exception e) {
+					// nothing to report it to
+				} finally {
+					entry.detail = null;
+					free.offer(entry);
+				}
+			}
+		}
+
+		private void write(int priority, String tag, String message) {
+			if (android) {
+				try {
+					Log.println(priority, tag, message);
+					return;
+				} catch (LinkageError e) {
+					android = false;
+				} catch (RuntimeException e) {
+					// the stub android.jar throws on every call
+					android = false;
+				}
+			}
+			System.err.println(tag + ": " + message);
+		}
+
+		private String format(Entry entry) {
+			text.setLength(0);
+			text.append(entry.message);
+			for (int i = 0; i < entry.count; ++i) {
+				text.append(' ').append(entry.keys[i]).append('=');
+				if (entry.integer[i]) {
+					text.append((long) entry.values[i]);
+				} else {
+					text.append(entry.values[i]);
+				}
+			}
+			if (entry.detail != null) text.append(' ').append(entry.detail);
+			// unreported is only used on this thread
+			Tag tag = entry.tag;
+			long suppressed = tag.suppressed.get();
+			if (suppressed > tag.unreported) {
+				text.append(" (").append(suppressed - tag.unreported).append(" suppressed)");
+				tag.unreported = suppressed;
+			}
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.NewApp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * ECG waveform from the BioHarness (250 Hz, 63 samples per packet) to OSC.
+ * The listener thread copies the samples of every packet into a short ring,
+ * and this thread sends them as /ecg messages of batchSize samples, or fewer
+ * once the oldest waiting sample is flushInterval old. Larger batches mean
+ * fewer datagrams and more latency.
+ *
+ * Every message starts with the index of its first sample since the stream
+ * started. Packets missing from the sequence numbers advance the index by the
+ * samples they held, so a receiver sees the gap instead of a joined waveform.
+ * With gap fill, short gaps are filled with SequenceTracker.GAP_MARKER samples
+ * instead, for receivers that expect an unbroken sample clock.
+ */
+public class EcgStream extends Thread {
+
+	public static final int SAMPLE_RATE = 250;
+	public static final int SAMPLES_PER_PACKET = 63;
+	// the first argument is the index
+	public static final int MAX_BATCH = OscFrame.MAX_ARGS - 1;
+	// longer gaps are only reported by the index
+	public static final int MAX_FILL_PACKETS = 4;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final Communicator communicator;
+	// 16 s of samples, so only a stuck sender overruns it
+	private final short[] ring = new short[4096];
+	private final int mask = ring.length - 1;
+	// samples written by the listener, and taken by this thread
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong taken = new AtomicLong();
+	// ring position and lost samples of every gap, {position, lost}
+	private final RingBuffer<long[]> gaps = new RingBuffer<long[]>(64);
+	// the records handed to gaps, taken in turn. Two more than it holds: the one
+	// being filled and the one just polled are never queued
+	private final long[][] gapRecords = new long[gaps.capacity() + 2][2];
+
+	private volatile int batchSize = 25;
+	private volatile long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+	private volatile boolean running = true;
+
+	// listener thread only
+	// samples lost since the last packet written, reported with the next one
+	private long pendingLost = 0;
+	private int nextRecord = 0;
+	private volatile long overruns = 0;
+
+	// this thread only
+	private final short[] batch = new short[MAX_BATCH];
+	// the next gap, copied out of its record
+	private boolean gapWaiting = false;
+	private long gapPosition;
+	private long gapLost;
+	private long lostBefore = 0;
+	private long waitingSince = 0;
+
+	public EcgStream(Communicator communicator) {
+		super("EcgStream");
+		this.communicator = communicator;
+		setDaemon(true);
+	}
+
+	// On the listener thread, missing is the number of packets lost just before
+	// this one, see SequenceTracker.track(). The samples are unpacked straight from the packet
+	public void write(int missing, ZephyrPayload.Ecg packet, boolean gapFill) {
+		int count = ZephyrPayload.Ecg.SAMPLES;
+		long position = reserve(missing, count, gapFill);
+		if (position < 0) return;
+		for (int i = 0; i < count; ++i) {
+			ring[(int) ((position + i) & mask)] = packet.sample(i);
+		}
+		commit(position + count);
+	}
+
+	// Where the samples go, or -1 when the ring is full
+	private long reserve(int missing, int count, boolean gapFill) {
+		if (gapFill && missing > 0 && missing <= MAX_FILL_PACKETS) {
+			fill(missing * SAMPLES_PER_PACKET);
+		} else {
+			pendingLost += (long) missing * SAMPLES_PER_PACKET;
+		}
+		long position = written.get();
+		if (position + count - taken.get() > ring.length) {
+			overruns++;
+			pendingLost += count;
+			return -1;
+		}
+		// tell the sender where the waveform jumps
+		if (pendingLost > 0) {
+			long[] gap = gapRecords[nextRecord];
+			gap[0] = position;
+			gap[1] = pendingLost;
+			if (gaps.offer(gap)) {
+				pendingLost = 0;
+				nextRecord = (nextRecord + 1) % gapRecords.length;
+			}
+		}
+		return position;
+	}
+
+	private void commit(long position) {
+		written.set(position);
+		LockSupport.unpark(this);
+	}
+
+	private void fill(int count) {
+		long position = written.get();
+		if (position + count - taken.get() > ring.length) {
+			pendingLost += count;
+			return;
+		}
+		for (int i = 0; i < count; ++i) {
+			ring[(int) ((position + i) & mask)] = SequenceTracker.GAP_MARKER;
+		}
+		written.set(position + count);
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			long available = written.get() - taken.get();
+			if (available == 0) {
+				waitingSince = 0;
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			long now = System.nanoTime();
+			if (waitingSince == 0) waitingSince = now;
+			long flushAt = waitingSince + flushIntervalNanos;
+			if (available < batchSize && now < flushAt) {
+				LockSupport.parkNanos(this, flushAt - now);
+				continue;
+			}
+			sendBatch(available);
+			// what is left waits from now on
+			waitingSince = 0;
+		}
+	}
+
+	private void sendBatch(long available) {
+		long position = taken.get();
+		if (!gapWaiting) takeGap();
+		while (gapWaiting && gapPosition <= position) {
+			lostBefore += gapLost;
+			takeGap();
+		}
+		int count = (int) Math.min(available, batchSize);
+		// a batch never spans a gap
+		if (gapWaiting && gapPosition < position + count) count = (int) (gapPosition - position);
+		for (int i = 0; i < count; ++i) {
+			batch[i] = ring[(int) ((position + i) & mask)];
+		}
+		taken.set(position + count);
+		communicator.sendingEcg((int) (position + lostBefore), batch, count);
+	}
+
+	// The record goes back to the listener once copied
+	private void takeGap() {
+		long[] gap = gaps.poll();
+		gapWaiting = gap != null;
+		if (gapWaiting) {
+			gapPosition = gap[0];
+			gapLost = gap[1];
+		}
+	}
+
+	// Samples per message, at most MAX_BATCH
+	public void setBatchSize(int size) {
+		batchSize = Math.max(1, Math.min(size, MAX_BATCH));
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	// Longest a sample waits for its batch to fill
+	public void setFlushInterval(int millis) {
+		flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		LockSupport.unpark(this);
+	}
+
+	public int getFlushInterval() {
+		return (int) TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos);
+	}
+
+	// Packets thrown away because the ring was full
+	public long getOverruns() {
+		return overruns;
+	}
+
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+}
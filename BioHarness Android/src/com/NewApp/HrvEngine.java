@@ -0,0 +1,130 @@
+package com.NewApp;
+
+/*
+ * Heart rate variability over the last window beats. The R to R intervals are
+ * kept in a circular buffer next to running integer sums of the intervals,
+ * their squares, the squared successive differences and the differences over
+ * 50 ms. A new beat adds its terms and removes those of the beat leaving the
+ * window, so every update costs the same whatever the window, and the integer
+ * sums never drift.
+ *
+ * Not thread safe: intervals are added and the results read on the listener
+ * thread. Only setWindow() may be called from elsewhere.
+ */
+public class HrvEngine {
+
+	// outside of this the detection went wrong, e.g. a missed or a doubled beat
+	public static final int MIN_INTERVAL = 300;
+	public static final int MAX_INTERVAL = 2000;
+
+	private int[] intervals;
+	private int start = 0;
+	private int count = 0;
+	private volatile int requestedWindow;
+
+	private long sum = 0;
+	private long sumOfSquares = 0;
+	// over the count - 1 successive differences in the window
+	private long sumOfSquaredDifferences = 0;
+	private int over50 = 0;
+
+	public HrvEngine(int window) {
+		intervals = new int[Math.max(2, window)];
+		requestedWindow = intervals.length;
+	}
+
+	// Returns false if the interval was rejected as an artifact
+	public boolean addInterval(int millis) {
+		if (millis < MIN_INTERVAL || millis > MAX_INTERVAL) return false;
+		if (requestedWindow != intervals.length) resize(requestedWindow);
+		if (count == intervals.length) removeOldest();
+		if (count > 0) {
+			int difference = millis - intervals[(start + count - 1) % intervals.length];
+			sumOfSquaredDifferences += (long) difference * difference;
+			if (Math.abs(difference) > 50) ++over50;
+		}
+		intervals[(start + count) % intervals.length] = millis;
+		++count;
+		sum += millis;
+		sumOfSquares += (long) millis * millis;
+		return true;
+	}
+
+	private void removeOldest() {
+		int oldest = intervals[start];
+		sum -= oldest;
+		sumOfSquares -= (long) oldest * oldest;
+		if (count > 1) {
+			int difference = intervals[(start + 1) % intervals.length] - oldest;
+			sumOfSquaredDifferences -= (long) difference * difference;
+			if (Math.abs(difference) > 50) --over50;
+		}
+		start = (start + 1) % intervals.length;
+		--count;
+	}
+
+	// Keeps the newest beats that still fit, only done when the window changes
+	private void resize(int window) {
+		int[] kept = new int[count];
+		for (int i = 0; i < count; ++i) {
+			kept[i] = intervals[(start + i) % intervals.length];
+		}
+		intervals = new int[window];
+		reset();
+		for (int i = Math.max(0, kept.length - window); i < kept.length; ++i) {
+			addInterval(kept[i]);
+		}
+	}
+
+	// Number of beats, applied when the next one is added
+	public void setWindow(int beats) {
+		requestedWindow = Math.max(2, beats);
+	}
+
+	public int getWindow() {
+		return requestedWindow;
+	}
+
+	public void reset() {
+		start = 0;
+		count = 0;
+		sum = 0;
+		sumOfSquares = 0;
+		sumOfSquaredDifferences = 0;
+		over50 = 0;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	// Root mean square of the successive differences, in ms
+	public double getRmssd() {
+		if (count < 2) return 0;
+		return Math.sqrt((double) sumOfSquaredDifferences / (count - 1));
+	}
+
+	// Standard deviation of the intervals, in ms
+	public double getSdnn() {
+		if (count < 2) return 0;
+		double variance = (sumOfSquares - (double) sum * sum / count) / (count - 1);
+		return Math.sqrt(Math.max(0, variance));
+	}
+
+	// Percentage of successive differences over 50 ms
+	public double getPnn50() {
+		if (count < 2) return 0;
+		return 100.0 * over50 / (count - 1);
+	}
+
+	public double getMeanInterval() {
+		if (count == 0) return 0;
+		return (double) sum / count;
+	}
+
+	// In beats per minute
+	public double getMeanHeartRate() {
+		if (count == 0) return 0;
+		return 60000.0 * count / sum;
+	}
+}
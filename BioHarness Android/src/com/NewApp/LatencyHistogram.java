@@ -0,0 +1,81 @@
+package com.NewApp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Histogram of durations in nanoseconds with a fixed set of log-linear buckets:
+ * every power of two is split in 8, so a percentile is within 12.5% of the real
+ * value whatever the range. Recording is one array increment, nothing is
+ * allocated, and percentiles can be read from another thread while recording.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BITS = 3;
+	// values below 8 have a bucket each, then 8 buckets per power of two up to 2^63
+	static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(0, nanos)));
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// Largest value falling in the bucket
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	// Adds the counts to totals, to merge the histograms of several senders
+	public void addTo(long[] totals) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			totals[i] += counts.get(i);
+		}
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	// e.g. 0.99 for the 99th percentile, 0 when nothing was recorded
+	public long percentile(double fraction) {
+		long[] totals = new long[BUCKETS];
+		addTo(totals);
+		return percentile(totals, fraction);
+	}
+
+	static long percentile(long[] totals, double fraction) {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			count += totals[i];
+		}
+		if (count == 0) return 0;
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += totals[i];
+			if (seen >= rank && totals[i] > 0) return upperBound(i);
+		}
+		return 0;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts.set(i, 0);
+		}
+	}
+}
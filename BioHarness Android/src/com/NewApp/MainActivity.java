@@ -5,6 +5,7 @@ import android.app.Activity;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Set;
@@ -35,16 +36,18 @@ public class MainActivity extends Activity {
 	BTClient _bt;
 	ZephyrProtocol _protocol;
 	NewConnectedListener _NConnListener;
-	private final int HEART_RATE = 0x100;
-	private final int RESPIRATION_RATE = 0x101;
-	private final int SKIN_TEMPERATURE = 0x102;
-	private final int POSTURE = 0x103;
-	private final int PEAK_ACCLERATION = 0x104;
-	private final int BREATHING_RAW = 0x105;
+	// the labels follow the sample bus at this rate, not at the packet rate
+	private static final int DISPLAY_INTERVAL_MILLIS = 250;
+	// raw packets of every session, under the app files
+	private static final String SESSIONS = "sessions";
+	private static final Diagnostics.Tag BLUETOOTH = Diagnostics.tag("bluetooth", 10);
+	private final long[] _displayedTimes = new long[Metric.values().length];
 	//  OSC data
 	private final String IP = "IP";
 	private final String PORT = "PORT";
 	private Communicator _oscCommunicator;
+	// the labels show the general packet, it stays on while connected
+	private boolean _holdingGeneral = false;
 	private Editor _preferencesEditor;
 	private SharedPreferences _preferences;
 	private EditText _ipEditText;
@@ -72,7 +75,7 @@ public class MainActivity extends Activity {
        _ipEditText.setText(_preferences.getString(IP, "192.168.43.213"));
        _portEditText.setText(_preferences.getString(PORT, "7780"));
        
-       _oscCommunicator = ((Communicator)getApplicationContext());
+       _oscCommunicator = ((BridgeApplication)getApplicationContext()).getCommunicator();
     
        
        
@@ -119,7 +122,7 @@ public class MainActivity extends Activity {
         			BluetoothDevice Device = adapter.getRemoteDevice(BhMacID);
         			String DeviceName = Device.getName();
         			_bt = new BTClient(adapter, BhMacID);
-        			_NConnListener = new NewConnectedListener(Newhandler,Newhandler);
+        			_NConnListener = new NewConnectedListener(Newhandler, _oscCommunicator);
         			_bt.addConnectedEventListener(_NConnListener);
         			
         			TextView tv1 = (EditText)findViewById(R.id.labelHeartRate);
@@ -138,11 +141,16 @@ public class MainActivity extends Activity {
         			 tv1.setText("0.0");
         			if(_bt.IsConnected())
         			{
+        				if (!_holdingGeneral) _oscCommunicator.getPacketDemand().hold(PacketDemand.GENERAL);
+        				_holdingGeneral = true;
+        				_oscCommunicator.startRecording(new File(getFilesDir(), SESSIONS));
         				_bt.start();
         				TextView tv = (TextView) findViewById(R.id.labelStatusMsg);
         				String ErrorText  = "Connected to BioHarness "+DeviceName;
 						 tv.setText(ErrorText);
 						 //Reset all the values to 0s
+						 Newhandler.removeCallbacks(displayTask);
+						 Newhandler.postDelayed(displayTask, DISPLAY_INTERVAL_MILLIS);
 
         			}
         			else
@@ -171,6 +179,11 @@ public class MainActivity extends Activity {
 					_bt.removeConnectedEventListener(_NConnListener);
 					/*Close the communication with the device & throw an exception if failure*/
 					_bt.Close();
+					_oscCommunicator.stopRecording();
+					_oscCommunicator.getPacketDemand().detach();
+					if (_holdingGeneral) _oscCommunicator.getPacketDemand().release(PacketDemand.GENERAL);
+					_holdingGeneral = false;
+					Newhandler.removeCallbacks(displayTask);
 					
 					// we disconnect OSC
 					_oscCommunicator.close();
@@ -179,6 +192,11 @@ public class MainActivity extends Activity {
         }
     }
     
+    private void setLabel(int id, String text) {
+    	TextView tv = (EditText)findViewById(id);
+    	if (tv != null)tv.setText(text);
+    }
+    
     // create a Toast to display info/errors etc
  	protected void showToast(String anErrorMessage) {
  		Context context = getApplicationContext();
@@ -192,96 +210,61 @@ public class MainActivity extends Activity {
 		public void onReceive(Context context, Intent intent) {
 			Bundle b = intent.getExtras();
 			BluetoothDevice device = adapter.getRemoteDevice(b.get("android.bluetooth.device.extra.DEVICE").toString());
-			Log.d("Bond state", "BOND_STATED = " + device.getBondState());
+			Diagnostics.Entry entry = Diagnostics.begin(BLUETOOTH, Log.DEBUG, "bond state");
+			if (entry != null) entry.add("state", device.getBondState()).commit();
 		}
     }
     private class BTBroadcastReceiver extends BroadcastReceiver {
 		@Override
 		public void onReceive(Context context, Intent intent) {
-			Log.d("BTIntent", intent.getAction());
+			Diagnostics.log(BLUETOOTH, Log.DEBUG, "intent", intent.getAction());
 			Bundle b = intent.getExtras();
-			Log.d("BTIntent", b.get("android.bluetooth.device.extra.DEVICE").toString());
-			Log.d("BTIntent", b.get("android.bluetooth.device.extra.PAIRING_VARIANT").toString());
+			Diagnostics.log(BLUETOOTH, Log.DEBUG, "device", b.get("android.bluetooth.device.extra.DEVICE"));
+			Diagnostics.log(BLUETOOTH, Log.DEBUG, "pairing variant", b.get("android.bluetooth.device.extra.PAIRING_VARIANT"));
 			try {
 				BluetoothDevice device = adapter.getRemoteDevice(b.get("android.bluetooth.device.extra.DEVICE").toString());
 				Method m = BluetoothDevice.class.getMethod("convertPinToBytes", new Class[] {String.class} );
 				byte[] pin = (byte[])m.invoke(device, "1234");
 				m = device.getClass().getMethod("setPin", new Class [] {pin.getClass()});
 				Object result = m.invoke(device, pin);
-				Log.d("BTTest", result.toString());
+				Diagnostics.log(BLUETOOTH, Log.DEBUG, "set pin", result);
 			} catch (SecurityException e1) {
-				e1.printStackTrace();
+				Diagnostics.log(BLUETOOTH, Log.WARN, "set pin failed", e1);
 			} catch (NoSuchMethodException e1) {
-				e1.printStackTrace();
+				Diagnostics.log(BLUETOOTH, Log.WARN, "set pin failed", e1);
 			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
+				Diagnostics.log(BLUETOOTH, Log.WARN, "set pin failed", e);
 			} catch (IllegalAccessException e) {
-				e.printStackTrace();
+				Diagnostics.log(BLUETOOTH, Log.WARN, "set pin failed", e);
 			} catch (InvocationTargetException e) {
-				e.printStackTrace();
+				Diagnostics.log(BLUETOOTH, Log.WARN, "set pin failed", e);
 			}
 		}
     }
     
 
-    final  Handler Newhandler = new Handler(){
-    	public void handleMessage(Message msg)
-    	{
-    		TextView tv;
-    		Log.w("MSG", msg.getData().toString());
-    		switch (msg.what)
-    		{
-    		case HEART_RATE:
-    			String HeartRatetext = msg.getData().getString("HeartRate");
-    			tv = (EditText)findViewById(R.id.labelHeartRate);
-    			System.out.println("Heart Rate Info is "+ HeartRatetext);
-    			if (tv != null)tv.setText(HeartRatetext);
-    			_oscCommunicator.sending("HEART_RATE", HeartRatetext);
-    		break;
-    		
-    		case RESPIRATION_RATE:
-    			String RespirationRatetext = msg.getData().getString("RespirationRate");
-    			tv = (EditText)findViewById(R.id.labelRespRate);
-    			if (tv != null)tv.setText(RespirationRatetext);
-    			_oscCommunicator.sending("RESPIRATION_RATE", RespirationRatetext);
-    		
-    		break;
-    		
-    		case SKIN_TEMPERATURE:
-    			String SkinTemperaturetext = msg.getData().getString("SkinTemperature");
-    			tv = (EditText)findViewById(R.id.labelSkinTemp);
-    			if (tv != null)tv.setText(SkinTemperaturetext);
-    			_oscCommunicator.sending("SKIN_TEMPERATURE", SkinTemperaturetext);
-    		break;
-    		
-    		case POSTURE:
-    			String PostureText = msg.getData().getString("Posture");
-    			tv = (EditText)findViewById(R.id.labelPosture);
-    			if (tv != null)tv.setText(PostureText);
-    			_oscCommunicator.sending("POSTURE", PostureText);
-    		
-    		break;
-    		
-    		case PEAK_ACCLERATION:
-    			String PeakAccText = msg.getData().getString("PeakAcceleration");
-    			tv = (EditText)findViewById(R.id.labelPeakAcc);
-    			if (tv != null)tv.setText(PeakAccText);
-    			_oscCommunicator.sending("PEAK_ACCLERATION", PeakAccText);
-    		break;	
-    		
-    		case BREATHING_RAW:
-    			short[] breathingRaw = msg.getData().getShortArray("BreathingRaw");
-    			String result = "";
-    			for (int i = 0; i < breathingRaw.length; ++i) {
-    				result += breathingRaw[i] + " ";
-    			}
-    			_oscCommunicator.sending("BREATHING_RAW", result);
-			break;
-    		}
+    final  Handler Newhandler = new Handler();
+    
+    // Shows the last value of every metric, a few times per second
+    private final Runnable displayTask = new Runnable() {
+    	public void run() {
+    		SampleBus bus = _oscCommunicator.getSampleBus();
+    		display(bus, Metric.HEART_RATE, R.id.labelHeartRate);
+    		display(bus, Metric.RESPIRATION_RATE, R.id.labelRespRate);
+    		display(bus, Metric.SKIN_TEMPERATURE, R.id.labelSkinTemp);
+    		display(bus, Metric.POSTURE, R.id.labelPosture);
+    		display(bus, Metric.PEAK_ACCLERATION, R.id.labelPeakAcc);
+    		Newhandler.postDelayed(this, DISPLAY_INTERVAL_MILLIS);
     	}
-
     };
     
-}
-
-
+    // Formats the value only when a new one arrived
+    private void display(SampleBus bus, Metric metric, int id) {
+    	long time = bus.getLatestTime(metric);
+    	if (time == _displayedTimes[metric.ordinal()]) return;
+    	_displayedTimes[metric.ordinal()] = time;
+    	double value = bus.getLatest(metric);
+    	setLabel(id, metric.isInteger() ? String.valueOf((int) value) : String.valueOf((float) value));
+    }
+    
+}
\ No newline at end of file
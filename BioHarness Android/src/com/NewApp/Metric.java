@@ -0,0 +1,37 @@
+package com.NewApp;
+
+/*
+ * Everything the listener decodes from the BioHarness. The name is also the
+ * OSC name, e.g. /controller/HEART_RATE.
+ */
+public enum Metric {
+	HEART_RATE(true),
+	RESPIRATION_RATE(false),
+	SKIN_TEMPERATURE(false),
+	POSTURE(true),
+	PEAK_ACCLERATION(false),
+	// one sample per value of the breathing waveform
+	BREATHING_RAW(true),
+	// one sample per beat, in ms
+	RR_INTERVAL(true),
+	// over the HrvEngine window, updated every beat
+	HRV_RMSSD(false),
+	HRV_SDNN(false),
+	HRV_PNN50(false),
+	HRV_MEAN_HR(false),
+	// from the accelerometer packets, every 400 ms
+	ACTIVITY(false),
+	STEP_CADENCE(false),
+	STEP_COUNT(true);
+
+	private final boolean integer;
+
+	private Metric(boolean integer) {
+		this.integer = integer;
+	}
+
+	// Sent as an int32 rather than a float32
+	public boolean isInteger() {
+		return integer;
+	}
+}
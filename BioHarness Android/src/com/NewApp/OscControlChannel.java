@@ -0,0 +1,77 @@
+package com.NewApp;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+/*
+ * Incoming control messages. The transport's receive thread only decodes and
+ * queues them, the handlers run here on a worker thread so a slow handler never
+ * holds up receiving, and none of them ever runs on the UI thread.
+ */
+public class OscControlChannel extends Thread implements OscTransport.Listener, OscDecoder.Listener {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final Diagnostics.Tag RECEIVER = Diagnostics.tag("receiver osc", 5);
+
+	private final OscDispatcher dispatcher;
+	private final RingBuffer<OscInMessage> inbox = new RingBuffer<OscInMessage>(64);
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean running = true;
+
+	public OscControlChannel(OscDispatcher dispatcher) {
+		super("OscControl");
+		this.dispatcher = dispatcher;
+		setDaemon(true);
+	}
+
+	// On the receive thread
+	public void received(ByteBuffer packet) {
+		try {
+			OscDecoder.decode(packet, this);
+		} catch (IllegalArgumentException e) {
+			Diagnostics.log(RECEIVER, Log.INFO, "bad packet", e);
+		} catch (BufferUnderflowException e) {
+			// cut short, e.g. a type tag with no argument behind it
+			Diagnostics.log(RECEIVER, Log.INFO, "bad packet", e);
+		}
+	}
+
+	// On the receive thread
+	public void message(OscInMessage message) {
+		if (!inbox.offer(message)) {
+			dropped.incrementAndGet();
+			return;
+		}
+		LockSupport.unpark(this);
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			OscInMessage message = inbox.poll();
+			if (message == null) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			try {
+				dispatcher.dispatch(message);
+			} catch (RuntimeException e) {
+				Diagnostics.log(RECEIVER, Log.INFO, message.getAddress(), e);
+			}
+		}
+	}
+
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+}
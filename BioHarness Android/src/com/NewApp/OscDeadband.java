@@ -0,0 +1,97 @@
+package com.NewApp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Change-only transmission of slow metrics. A value is only sent when it moved
+ * out of the band around the last sent value, or when nothing was sent for
+ * maxSilenceMillis so receivers know we are still alive. Metrics without a
+ * band are always sent. accept() only decides, sent() is called once the value
+ * really went out, so a value dropped on the way (no free frame) is tried again
+ * with the next one instead of being taken for sent.
+ */
+public class OscDeadband {
+
+	private static class Band {
+		final double absolute;
+		final double relative;
+		final long maxSilenceMillis;
+		boolean sent = false;
+		double lastValue;
+		long lastSentAt;
+		final AtomicLong suppressed = new AtomicLong();
+
+		Band(double absolute, double relative, long maxSilenceMillis) {
+			this.absolute = absolute;
+			this.relative = relative;
+			this.maxSilenceMillis = maxSilenceMillis;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Band> bands = new ConcurrentHashMap<String, Band>();
+	private final AtomicLong passed = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	// Changes smaller than max(absolute, relative * |last value|) are not sent,
+	// but a value goes out at least every maxSilenceMillis
+	public void setBand(String name, double absolute, double relative, long maxSilenceMillis) {
+		bands.put(name, new Band(absolute, relative, maxSilenceMillis));
+	}
+
+	public void removeBand(String name) {
+		bands.remove(name);
+	}
+
+	// Returns true if the value has to be sent, call sent() once it was
+	public boolean accept(String name, double value, long nowMillis) {
+		Band band = bands.get(name);
+		if (band == null) return true;
+		synchronized (band) {
+			if (band.sent && nowMillis - band.lastSentAt < band.maxSilenceMillis) {
+				double width = Math.max(band.absolute, band.relative * Math.abs(band.lastValue));
+				if (Math.abs(value - band.lastValue) <= width) {
+					band.suppressed.incrementAndGet();
+					suppressed.incrementAndGet();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Remembers value as the last sent one, after accept() let it through and it was published
+	public void sent(String name, double value, long nowMillis) {
+		passed.incrementAndGet();
+		Band band = bands.get(name);
+		if (band == null) return;
+		synchronized (band) {
+			band.sent = true;
+			band.lastValue = value;
+			band.lastSentAt = nowMillis;
+		}
+	}
+
+	// Forget the last sent values, so everything goes out again (e.g. a new connection)
+	public void reset() {
+		for (Band band : bands.values()) {
+			synchronized (band) {
+				band.sent = false;
+			}
+		}
+	}
+
+	public long getPassed() {
+		return passed.get();
+	}
+
+	// Number of sends saved
+	public long getSuppressed() {
+		return suppressed.get();
+	}
+
+	public long getSuppressed(String name) {
+		Band band = bands.get(name);
+		return band != null ? band.suppressed.get() : 0;
+	}
+}
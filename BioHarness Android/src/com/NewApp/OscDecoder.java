@@ -0,0 +1,122 @@
+package com.NewApp;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Parses incoming OSC packets, messages or (nested) bundles, straight from the
+ * receive buffer.
+ */
+public class OscDecoder {
+
+	private static final long SECONDS_FROM_1900_TO_1970 = 2208988800L;
+
+	public interface Listener {
+		void message(OscInMessage message);
+	}
+
+	// Decodes the bytes between position and limit, throws IllegalArgumentException if malformed
+	public static void decode(ByteBuffer packet, Listener listener) {
+		decode(packet, 0, listener);
+	}
+
+	private static void decode(ByteBuffer packet, long timeMillis, Listener listener) {
+		try {
+			if (packet.remaining() == 0) return;
+			byte first = packet.get(packet.position());
+			if (first == '#') {
+				decodeBundle(packet, listener);
+			} else if (first == '/') {
+				listener.message(decodeMessage(packet, timeMillis));
+			} else {
+				throw new IllegalArgumentException("Not an OSC packet");
+			}
+		} catch (java.nio.BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated OSC packet");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated OSC packet");
+		}
+	}
+
+	private static void decodeBundle(ByteBuffer packet, Listener listener) {
+		if (!"#bundle".equals(readString(packet))) {
+			throw new IllegalArgumentException("Not an OSC bundle");
+		}
+		long seconds = packet.getInt() & 0xFFFFFFFFL;
+		long fraction = packet.getInt() & 0xFFFFFFFFL;
+		long timeMillis = 0;
+		// 1 means immediately
+		if (seconds != 0 || fraction != 1) {
+			timeMillis = (seconds - SECONDS_FROM_1900_TO_1970) * 1000 + ((fraction * 1000) >>> 32);
+		}
+		int end = packet.limit();
+		while (packet.remaining() >= 4) {
+			int size = packet.getInt();
+			int elementEnd = packet.position() + size;
+			if (size < 0 || elementEnd > end) throw new IllegalArgumentException("Bad bundle element size");
+			packet.limit(elementEnd);
+			decode(packet, timeMillis, listener);
+			packet.limit(end);
+			packet.position(elementEnd);
+		}
+	}
+
+	private static OscInMessage decodeMessage(ByteBuffer packet, long timeMillis) {
+		String address = readString(packet);
+		if (!packet.hasRemaining()) {
+			// very old senders leave the type tag out
+			return new OscInMessage(address, new Object[0], timeMillis);
+		}
+		String types = readString(packet);
+		Object[] args = new Object[Math.max(0, types.length() - 1)];
+		for (int i = 1; i < types.length(); ++i) {
+			switch (types.charAt(i)) {
+			case 'i':
+				args[i - 1] = Integer.valueOf(packet.getInt());
+				break;
+			case 'f':
+				args[i - 1] = Float.valueOf(packet.getFloat());
+				break;
+			case 's':
+				args[i - 1] = readString(packet);
+				break;
+			case 'b':
+				int length = packet.getInt();
+				// off the network, checked before anything is allocated for it
+				if (length < 0 || length > packet.remaining()) throw new IllegalArgumentException("blob of " + length + " bytes");
+				byte[] blob = new byte[length];
+				packet.get(blob);
+				skipPadding(packet, blob.length);
+				args[i - 1] = blob;
+				break;
+			case 'T':
+				args[i - 1] = Boolean.TRUE;
+				break;
+			case 'F':
+				args[i - 1] = Boolean.FALSE;
+				break;
+			case 'N':
+				args[i - 1] = null;
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported OSC type " + types.charAt(i));
+			}
+		}
+		return new OscInMessage(address, args, timeMillis);
+	}
+
+	private static String readString(ByteBuffer packet) {
+		int start = packet.position();
+		int end = start;
+		while (packet.get(end) != 0) ++end;
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = (char) (packet.get(start + i) & 0xFF);
+		}
+		packet.position(start + OscEncoder.padded(chars.length));
+		return new String(chars);
+	}
+
+	private static void skipPadding(ByteBuffer packet, int length) {
+		packet.position(packet.position() + ((4 - (length & 3)) & 3));
+	}
+}
@@ -0,0 +1,86 @@
+package com.NewApp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/*
+ * One receiver of the biometric stream (the Unity visualization, a Pure Data
+ * patch, a recorder...). Every destination has its own queue, sender thread and
+ * rate limit, so a slow or unreachable one never holds back the others.
+ */
+public class OscDestination {
+
+	private final String host;
+	private final int port;
+	private final int maxPerSecond;
+	// written by start() and stop(), read on the Bluetooth and control threads
+	private volatile OscSender sender;
+
+	// maxPerSecond is the datagram rate limit, 0 for none
+	public OscDestination(String host, int port, int maxPerSecond) {
+		this.host = host;
+		this.port = port;
+		this.maxPerSecond = maxPerSecond;
+	}
+
+	// The transport is owned by the destination from now on
+	public void start(OscTransport transport, int capacity, OscSendQueue.OverflowPolicy policy) throws IOException {
+		InetAddress address = InetAddress.getByName(host);
+		transport.open(address, port);
+		OscSender s = new OscSender("OscSender " + host + ":" + port, new OscSendQueue(capacity, policy), transport);
+		s.setMaxPerSecond(maxPerSecond);
+		s.start();
+		// published once running, the senders only ever see a started one
+		sender = s;
+	}
+
+	public void stop() {
+		OscSender s = sender;
+		// unpublished first, so nothing more is queued to the stopping thread
+		sender = null;
+		if (s != null) s.shutdown();
+	}
+
+	public boolean isStarted() {
+		return sender != null;
+	}
+
+	// Copies the frame into this destination's own queue
+	public void send(OscFrame frame) {
+		OscSender s = sender;
+		if (s == null) return;
+		OscFrame copy = s.obtain();
+		if (copy == null) return;
+		copy.copyFrom(frame);
+		s.enqueue(copy);
+	}
+
+	public boolean matches(String host, int port) {
+		return this.host.equals(host) && this.port == port;
+	}
+
+	public static boolean isMulticast(String host) throws IOException {
+		return InetAddress.getByName(host).isMulticastAddress();
+	}
+
+	public OscSender getSender() {
+		return sender;
+	}
+
+	public OscSendQueue getQueue() {
+		OscSender s = sender;
+		return s != null ? s.getQueue() : null;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getMaxPerSecond() {
+		return maxPerSecond;
+	}
+}
@@ -0,0 +1,99 @@
+package com.NewApp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Routes incoming messages to handlers through a trie of address segments,
+ * built when the handlers are registered. A "*" segment in a registered address
+ * matches any single segment, e.g. "/control/stream/*". Matching walks the
+ * incoming address in place, so it costs one step per segment whatever the
+ * number of handlers.
+ */
+public class OscDispatcher {
+
+	private static final OscHandler[] NO_HANDLERS = new OscHandler[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static class Node {
+		final String segment;
+		// replaced, never modified, so dispatch needs no lock
+		volatile Node[] children = NO_CHILDREN;
+		volatile Node wildcard;
+		volatile OscHandler[] handlers = NO_HANDLERS;
+
+		Node(String segment) {
+			this.segment = segment;
+		}
+	}
+
+	private final Node root = new Node("");
+	private final AtomicLong unhandled = new AtomicLong();
+
+	public synchronized void addHandler(String address, OscHandler handler) {
+		Node node = root;
+		for (String segment : address.substring(1).split("/")) {
+			node = child(node, segment);
+		}
+		OscHandler[] handlers = new OscHandler[node.handlers.length + 1];
+		System.arraycopy(node.handlers, 0, handlers, 0, node.handlers.length);
+		handlers[handlers.length - 1] = handler;
+		node.handlers = handlers;
+	}
+
+	private static Node child(Node node, String segment) {
+		if ("*".equals(segment)) {
+			if (node.wildcard == null) node.wildcard = new Node(segment);
+			return node.wildcard;
+		}
+		for (Node child : node.children) {
+			if (child.segment.equals(segment)) return child;
+		}
+		Node created = new Node(segment);
+		Node[] children = new Node[node.children.length + 1];
+		System.arraycopy(node.children, 0, children, 0, node.children.length);
+		children[children.length - 1] = created;
+		node.children = children;
+		return created;
+	}
+
+	// Runs every handler matching the address, returns false if there was none
+	public boolean dispatch(OscInMessage message) {
+		String address = message.getAddress();
+		if (address.length() == 0 || address.charAt(0) != '/' || !dispatch(root, address, 1, message)) {
+			unhandled.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean dispatch(Node node, String address, int start, OscInMessage message) {
+		int end = address.indexOf('/', start);
+		if (end < 0) end = address.length();
+		int length = end - start;
+		boolean last = end == address.length();
+		boolean handled = false;
+		for (Node child : node.children) {
+			if (child.segment.length() == length && address.regionMatches(start, child.segment, 0, length)) {
+				handled |= last ? run(child, message) : dispatch(child, address, end + 1, message);
+				break;
+			}
+		}
+		Node wildcard = node.wildcard;
+		if (wildcard != null) {
+			handled |= last ? run(wildcard, message) : dispatch(wildcard, address, end + 1, message);
+		}
+		return handled;
+	}
+
+	private static boolean run(Node node, OscInMessage message) {
+		OscHandler[] handlers = node.handlers;
+		for (OscHandler handler : handlers) {
+			handler.handle(message);
+		}
+		return handlers.length > 0;
+	}
+
+	public long getUnhandled() {
+		return unhandled.get();
+	}
+}
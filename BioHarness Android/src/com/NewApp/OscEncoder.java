@@ -0,0 +1,108 @@
+package com.NewApp;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Writes OscFrames straight into a reused ByteBuffer. The address and type tag
+ * of every metric are encoded once in a Template, so steady state encoding
+ * does not allocate anything.
+ */
+public class OscEncoder {
+
+	// seconds between the NTP epoch (1900) and the Java epoch (1970)
+	private static final long SECONDS_FROM_1900_TO_1970 = 2208988800L;
+	private static final byte[] BUNDLE = {'#', 'b', 'u', 'n', 'd', 'l', 'e', 0};
+
+	/*
+	 * Padded address and type tag bytes of one OSC address, e.g.
+	 * "/controller/HEART_RATE" with ",i".
+	 */
+	public static class Template {
+		final String address;
+		final String types;
+		final byte[] header;
+
+		public Template(String address, String types) {
+			this.address = address;
+			this.types = types;
+			ByteBuffer buffer = ByteBuffer.allocate(padded(address.length()) + padded(types.length()));
+			putString(buffer, address);
+			putString(buffer, types);
+			header = buffer.array();
+		}
+
+		public String getAddress() {
+			return address;
+		}
+
+		public String getTypes() {
+			return types;
+		}
+	}
+
+	// Encodes the frame from position 0 and flips the buffer, returns the length
+	public static int encode(OscFrame frame, ByteBuffer buffer) {
+		buffer.clear();
+		if (frame.isBundle()) {
+			buffer.put(BUNDLE);
+			putTimeTag(buffer, frame.getTimeMillis());
+			for (int i = 0; i < frame.getMessageCount(); ++i) {
+				// every element is preceded by its size, patched once it is written
+				int sizePosition = buffer.position();
+				buffer.putInt(0);
+				putMessage(buffer, frame, i);
+				buffer.putInt(sizePosition, buffer.position() - sizePosition - 4);
+			}
+		} else {
+			putMessage(buffer, frame, 0);
+		}
+		buffer.flip();
+		return buffer.limit();
+	}
+
+	private static void putMessage(ByteBuffer buffer, OscFrame frame, int message) {
+		Template template = frame.templates[message];
+		buffer.put(template.header);
+		String types = template.types;
+		int arg = frame.argStart[message];
+		// index 0 is the leading ','
+		for (int i = 1; i < types.length(); ++i, ++arg) {
+			switch (types.charAt(i)) {
+			case 'i':
+				buffer.putInt(frame.ints[arg]);
+				break;
+			case 'f':
+				buffer.putFloat(frame.floats[arg]);
+				break;
+			case 's':
+				putString(buffer, (String) frame.objects[arg]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported OSC type " + types.charAt(i));
+			}
+		}
+	}
+
+	static void putTimeTag(ByteBuffer buffer, long timeMillis) {
+		long seconds = timeMillis / 1000 + SECONDS_FROM_1900_TO_1970;
+		long fraction = ((timeMillis % 1000) << 32) / 1000;
+		buffer.putInt((int) seconds);
+		buffer.putInt((int) fraction);
+	}
+
+	// OSC strings are ASCII, null terminated and padded to 4 bytes
+	static void putString(ByteBuffer buffer, String s) {
+		int length = s.length();
+		for (int i = 0; i < length; ++i) {
+			buffer.put((byte) s.charAt(i));
+		}
+		for (int i = length; i < padded(length); ++i) {
+			buffer.put((byte) 0);
+		}
+	}
+
+	// Size of a string once null terminated and padded
+	static int padded(int length) {
+		return (length + 4) & ~3;
+	}
+}
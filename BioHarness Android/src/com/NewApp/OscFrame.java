@@ -0,0 +1,115 @@
+package com.NewApp;
+
+/*
+ * Reusable holder for one outgoing OSC packet: a single message, or a bundle of
+ * messages sharing one timetag. Frames come from the OscSendQueue pool, are
+ * filled by the producer, encoded by the sender thread and handed back, so
+ * nothing is allocated per message.
+ */
+public class OscFrame {
+
+	public static final int MAX_MESSAGES = 8;
+	// one ECG packet's worth of samples plus their index
+	public static final int MAX_ARGS = 64;
+
+	// queue whose pool the frame goes back to, whichever queue it was sent through
+	OscSendQueue owner;
+	// address used by the LATEST_VALUE_WINS policy to replace older frames
+	String key;
+	private boolean bundle;
+	private long timeMillis;
+
+	int messageCount;
+	final OscEncoder.Template[] templates = new OscEncoder.Template[MAX_MESSAGES];
+	final int[] argStart = new int[MAX_MESSAGES + 1];
+
+	int argCount;
+	final int[] ints = new int[MAX_ARGS];
+	final float[] floats = new float[MAX_ARGS];
+	final Object[] objects = new Object[MAX_ARGS];
+
+	// Starts a frame holding a single message
+	public OscFrame begin(OscEncoder.Template template) {
+		clear();
+		key = template.address;
+		return message(template);
+	}
+
+	// Starts a bundle timetagged with timeMillis (wall clock)
+	public OscFrame beginBundle(String key, long timeMillis) {
+		clear();
+		this.key = key;
+		this.bundle = true;
+		this.timeMillis = timeMillis;
+		return this;
+	}
+
+	// Adds a message to the frame, its arguments follow with add()
+	public OscFrame message(OscEncoder.Template template) {
+		templates[messageCount] = template;
+		argStart[messageCount] = argCount;
+		++messageCount;
+		return this;
+	}
+
+	public OscFrame add(int value) {
+		ints[argCount++] = value;
+		return this;
+	}
+
+	public OscFrame add(float value) {
+		floats[argCount++] = value;
+		return this;
+	}
+
+	public OscFrame add(String value) {
+		objects[argCount++] = value;
+		return this;
+	}
+
+	// Copies another frame, used to hand the same message to several destinations
+	public void copyFrom(OscFrame other) {
+		clear();
+		key = other.key;
+		bundle = other.bundle;
+		timeMillis = other.timeMillis;
+		messageCount = other.messageCount;
+		argCount = other.argCount;
+		System.arraycopy(other.templates, 0, templates, 0, messageCount);
+		System.arraycopy(other.argStart, 0, argStart, 0, messageCount);
+		System.arraycopy(other.ints, 0, ints, 0, argCount);
+		System.arraycopy(other.floats, 0, floats, 0, argCount);
+		System.arraycopy(other.objects, 0, objects, 0, argCount);
+	}
+
+	void clear() {
+		// drop references so the pool does not keep strings alive
+		for (int i = 0; i < argCount; ++i) {
+			objects[i] = null;
+		}
+		for (int i = 0; i < messageCount; ++i) {
+			templates[i] = null;
+		}
+		key = null;
+		bundle = false;
+		timeMillis = 0;
+		messageCount = 0;
+		argCount = 0;
+	}
+
+	public boolean isBundle() {
+		return bundle;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public int getMessageCount() {
+		return messageCount;
+	}
+
+	public String getKey() {
+		return key;
+	}
+}
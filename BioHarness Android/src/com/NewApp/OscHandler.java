@@ -0,0 +1,6 @@
+package com.NewApp;
+
+// Receives the incoming messages matching the address it was registered for
+public interface OscHandler {
+	void handle(OscInMessage message);
+}
@@ -0,0 +1,73 @@
+package com.NewApp;
+
+/*
+ * A decoded incoming OSC message. Arguments are Integer, Float, String, byte[]
+ * (blob), Boolean or null, and the getters convert between numbers and strings
+ * since Pure Data and Unity do not agree on what a number is.
+ */
+public class OscInMessage {
+
+	private final String address;
+	private final Object[] args;
+	// timetag of the enclosing bundle in wall clock millis, 0 for immediately
+	private final long timeMillis;
+
+	public OscInMessage(String address, Object[] args, long timeMillis) {
+		this.address = address;
+		this.args = args;
+		this.timeMillis = timeMillis;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public int getArgumentCount() {
+		return args.length;
+	}
+
+	public Object getArgument(int i) {
+		return args[i];
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public int getInt(int i, int defaultValue) {
+		if (i >= args.length || args[i] == null) return defaultValue;
+		Object arg = args[i];
+		if (arg instanceof Number) return ((Number) arg).intValue();
+		if (arg instanceof Boolean) return ((Boolean) arg).booleanValue() ? 1 : 0;
+		try {
+			return (int) Float.parseFloat(arg.toString());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	public float getFloat(int i, float defaultValue) {
+		if (i >= args.length || args[i] == null) return defaultValue;
+		Object arg = args[i];
+		if (arg instanceof Number) return ((Number) arg).floatValue();
+		try {
+			return Float.parseFloat(arg.toString());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	public String getString(int i, String defaultValue) {
+		if (i >= args.length || args[i] == null) return defaultValue;
+		return args[i].toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder(address);
+		for (int i = 0; i < args.length; ++i) {
+			s.append(' ').append(args[i]);
+		}
+		return s.toString();
+	}
+}
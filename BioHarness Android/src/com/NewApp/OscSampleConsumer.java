@@ -0,0 +1,82 @@
+package com.NewApp;
+
+/*
+ * Turns the samples of the bus back into OSC messages: the metrics of one
+ * general packet become one bundle, the breathing samples of one packet one
+ * int array, and everything else one message per value. Runs on its own
+ * SampleBus thread.
+ */
+public class OscSampleConsumer implements SampleBus.Consumer {
+
+	private static final int MAX_WAVEFORM = OscFrame.MAX_ARGS;
+	// values() copies the array on every call
+	private static final Metric[] METRICS = Metric.values();
+	private static final Metric[] GENERAL_PACKET = {Metric.HEART_RATE, Metric.RESPIRATION_RATE, Metric.SKIN_TEMPERATURE, Metric.POSTURE, Metric.PEAK_ACCLERATION};
+
+	private final Communicator communicator;
+	// when true the metrics of a general packet go out as one OSC bundle,
+	// otherwise one message per metric
+	private volatile boolean bundleGeneralPacket = true;
+
+	private final boolean[] inGeneralPacket = new boolean[METRICS.length];
+	private final double[] values = new double[METRICS.length];
+	private final boolean[] seen = new boolean[METRICS.length];
+	private final short[] breathing = new short[MAX_WAVEFORM];
+	private int breathingCount = 0;
+
+	public OscSampleConsumer(Communicator communicator) {
+		this.communicator = communicator;
+		for (Metric metric : GENERAL_PACKET) {
+			inGeneralPacket[metric.ordinal()] = true;
+		}
+	}
+
+	public void onSample(Sample sample) {
+		Metric metric = sample.metric;
+		if (metric == Metric.BREATHING_RAW) {
+			if (breathingCount < breathing.length) breathing[breathingCount++] = (short) sample.value;
+			if (sample.last) {
+				communicator.sending(metric.name(), breathing, breathingCount);
+				breathingCount = 0;
+			}
+			return;
+		}
+		if (!bundleGeneralPacket || !inGeneralPacket[metric.ordinal()]) {
+			send(metric, sample.value);
+			return;
+		}
+		values[metric.ordinal()] = sample.value;
+		seen[metric.ordinal()] = true;
+		if (sample.last) sendGeneralPacket(sample.timeMillis);
+	}
+
+	private void sendGeneralPacket(long timeMillis) {
+		boolean complete = true;
+		for (Metric metric : GENERAL_PACKET) {
+			complete &= seen[metric.ordinal()];
+		}
+		if (complete) {
+			communicator.sendingGeneralPacket(timeMillis, (int) values[Metric.HEART_RATE.ordinal()],
+					(float) values[Metric.RESPIRATION_RATE.ordinal()], (float) values[Metric.SKIN_TEMPERATURE.ordinal()],
+					(int) values[Metric.POSTURE.ordinal()], (float) values[Metric.PEAK_ACCLERATION.ordinal()]);
+		}
+		for (int i = 0; i < seen.length; ++i) {
+			// samples of the packet were dropped on the bus, send what came through
+			if (seen[i] && !complete) send(METRICS[i], values[i]);
+			seen[i] = false;
+		}
+	}
+
+	private void send(Metric metric, double value) {
+		if (metric.isInteger()) communicator.sending(metric.name(), (int) value);
+		else communicator.sending(metric.name(), (float) value);
+	}
+
+	public void setBundleGeneralPacket(boolean bundle) {
+		bundleGeneralPacket = bundle;
+	}
+
+	public boolean isBundleGeneralPacket() {
+		return bundleGeneralPacket;
+	}
+}
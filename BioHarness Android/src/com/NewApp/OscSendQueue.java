@@ -0,0 +1,155 @@
+package com.NewApp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Hand-off between the threads producing OSC messages (UI, listener) and the
+ * OscSender thread. Frames are preallocated and recycled through a pool, and
+ * neither obtain() nor offer() ever blocks: when the buffer is full the
+ * overflow policy decides what gets lost.
+ */
+public class OscSendQueue {
+
+	public enum OverflowPolicy {
+		// keep every message, and when full throw away the oldest one waiting
+		DROP_OLDEST,
+		// keep only the newest message of every address, older ones are replaced
+		LATEST_VALUE_WINS
+	}
+
+	private final OverflowPolicy policy;
+	private final RingBuffer<OscFrame> pool;
+	// DROP_OLDEST: frames in arrival order
+	private final RingBuffer<OscFrame> frames;
+	// LATEST_VALUE_WINS: one pending slot per address, and the slots waiting to be sent
+	private final ConcurrentHashMap<String, AtomicReference<OscFrame>> latest;
+	private final RingBuffer<AtomicReference<OscFrame>> dirty;
+
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong dequeued = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public OscSendQueue(int capacity, OverflowPolicy policy) {
+		this.policy = policy;
+		if (policy == OverflowPolicy.LATEST_VALUE_WINS) {
+			frames = null;
+			latest = new ConcurrentHashMap<String, AtomicReference<OscFrame>>();
+			dirty = new RingBuffer<AtomicReference<OscFrame>>(capacity);
+		} else {
+			frames = new RingBuffer<OscFrame>(capacity);
+			latest = null;
+			dirty = null;
+		}
+		// one frame per slot, plus the one being encoded by the sender
+		int poolSize = (frames != null ? frames.capacity() : dirty.capacity()) + 1;
+		pool = new RingBuffer<OscFrame>(poolSize);
+		for (int i = 0; i < poolSize; ++i) {
+			OscFrame frame = new OscFrame();
+			frame.owner = this;
+			pool.offer(frame);
+		}
+	}
+
+	// Returns a free frame to fill, or null if the message has to be dropped
+	public OscFrame obtain() {
+		OscFrame frame = pool.poll();
+		if (frame == null && policy == OverflowPolicy.DROP_OLDEST) {
+			// every frame is waiting to be sent, reuse the oldest one
+			frame = frames.poll();
+			if (frame != null) {
+				dropped.incrementAndGet();
+				frame.clear();
+			}
+		}
+		if (frame == null) {
+			enqueued.incrementAndGet();
+			dropped.incrementAndGet();
+			return null;
+		}
+		return frame;
+	}
+
+	// Publishes a frame taken from obtain(), returns false if it was lost
+	public boolean offer(OscFrame frame) {
+		enqueued.incrementAndGet();
+		if (policy == OverflowPolicy.LATEST_VALUE_WINS) {
+			return offerLatest(frame);
+		}
+		while (!frames.offer(frame)) {
+			OscFrame oldest = frames.poll();
+			if (oldest != null) {
+				dropped.incrementAndGet();
+				release(oldest);
+			}
+		}
+		return true;
+	}
+
+	private boolean offerLatest(OscFrame frame) {
+		AtomicReference<OscFrame> slot = latest.get(frame.key);
+		if (slot == null) {
+			AtomicReference<OscFrame> created = new AtomicReference<OscFrame>();
+			slot = latest.putIfAbsent(frame.key, created);
+			if (slot == null) slot = created;
+		}
+		OscFrame previous = slot.getAndSet(frame);
+		if (previous != null) {
+			// the slot is already waiting in the buffer, the old value is superseded
+			dropped.incrementAndGet();
+			release(previous);
+			return true;
+		}
+		if (!dirty.offer(slot)) {
+			// more addresses than capacity, clear the slot so the address is not stuck
+			OscFrame cleared = slot.getAndSet(null);
+			if (cleared != null) {
+				dropped.incrementAndGet();
+				release(cleared);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	// Next frame to send, to be given back with release() once encoded
+	public OscFrame poll() {
+		OscFrame frame = null;
+		if (policy == OverflowPolicy.LATEST_VALUE_WINS) {
+			AtomicReference<OscFrame> slot;
+			while (frame == null && (slot = dirty.poll()) != null) {
+				frame = slot.getAndSet(null);
+			}
+		} else {
+			frame = frames.poll();
+		}
+		if (frame != null) dequeued.incrementAndGet();
+		return frame;
+	}
+
+	public void release(OscFrame frame) {
+		frame.clear();
+		frame.owner.pool.offer(frame);
+	}
+
+	public boolean isEmpty() {
+		return policy == OverflowPolicy.LATEST_VALUE_WINS ? dirty.isEmpty() : frames.isEmpty();
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	public long getEnqueued() {
+		return enqueued.get();
+	}
+
+	public long getDequeued() {
+		return dequeued.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,142 @@
+package com.NewApp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+/*
+ * Dedicated thread draining the OscSendQueue into an OscTransport, so the
+ * blocking send never runs on the UI thread. Frames are encoded into one reused
+ * direct buffer.
+ */
+public class OscSender extends Thread {
+
+	// upper bound on how long a missed wake-up can delay a message
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final Diagnostics.Tag SENDER = Diagnostics.tag("sender osc", 5);
+	public static final int MAX_PACKET_SIZE = 8192;
+
+	private final OscSendQueue queue;
+	private final OscTransport transport;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+	private volatile boolean running = true;
+	// pacing between two datagrams, 0 when unlimited
+	private volatile long nanosPerPacket = 0;
+	private long nextSendNanos = 0;
+	private volatile long failed = 0;
+	private volatile long sent = 0;
+	private volatile long bytes = 0;
+	private final LatencyHistogram sendLatency = new LatencyHistogram();
+	// something was handed to the transport since the last flush
+	private boolean unflushed = false;
+
+	// The transport has to be opened already, it is closed when the thread stops
+	public OscSender(OscSendQueue queue, OscTransport transport) {
+		this("OscSender", queue, transport);
+	}
+
+	public OscSender(String name, OscSendQueue queue, OscTransport transport) {
+		super(name);
+		this.queue = queue;
+		this.transport = transport;
+		setDaemon(true);
+	}
+
+	// At most maxPerSecond datagrams, 0 for no limit. What does not fit waits in
+	// the queue, where the overflow policy decides what to drop
+	public void setMaxPerSecond(int maxPerSecond) {
+		nanosPerPacket = maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxPerSecond : 0;
+	}
+
+	// Non blocking, safe to call from the UI thread. Returns null when full
+	public OscFrame obtain() {
+		return queue.obtain();
+	}
+
+	// Non blocking, safe to call from the UI thread
+	public boolean enqueue(OscFrame frame) {
+		boolean accepted = queue.offer(frame);
+		LockSupport.unpark(this);
+		return accepted;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			OscFrame frame = queue.poll();
+			if (frame == null) {
+				if (unflushed) flush();
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			pace();
+			try {
+				int length = OscEncoder.encode(frame, buffer);
+				long start = System.nanoTime();
+				transport.send(buffer);
+				sendLatency.record(System.nanoTime() - start);
+				unflushed = true;
+				// only this thread writes them
+				sent = sent + 1;
+				bytes = bytes + length;
+			} catch (Exception e) {
+				// an unreachable receiver fails every send, the tag rate limits them
+				++failed;
+				Diagnostics.log(SENDER, Log.INFO, getName(), e);
+			} finally {
+				queue.release(frame);
+			}
+		}
+		transport.close();
+	}
+
+	private void flush() {
+		unflushed = false;
+		try {
+			transport.flush();
+		} catch (Exception e) {
+			++failed;
+			Diagnostics.log(SENDER, Log.INFO, getName(), e);
+		}
+	}
+
+	private void pace() {
+		long interval = nanosPerPacket;
+		if (interval == 0) return;
+		long now = System.nanoTime();
+		while (running && now < nextSendNanos) {
+			LockSupport.parkNanos(this, nextSendNanos - now);
+			now = System.nanoTime();
+		}
+		nextSendNanos = Math.max(now, nextSendNanos) + interval;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public long getSent() {
+		return sent;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	// Duration of transport.send(), flushes of the stream transport are not counted
+	public LatencyHistogram getSendLatency() {
+		return sendLatency;
+	}
+
+	// Stops the thread, the transport is closed once the current send returns
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	public OscSendQueue getQueue() {
+		return queue;
+	}
+}
@@ -0,0 +1,64 @@
+package com.NewApp;
+
+/*
+ * Snapshot of what the senders did since connect(): messages through their
+ * queues, datagrams and bytes handed to the network, and how long the send
+ * calls took. Built by Communicator.getStats(), summed over host, the stream
+ * and every destination.
+ */
+public class OscStats {
+
+	private long enqueued;
+	private long sent;
+	private long dropped;
+	private long failed;
+	private long bytes;
+	private final long[] latency = new long[LatencyHistogram.BUCKETS];
+
+	void add(OscSender sender) {
+		if (sender == null) return;
+		OscSendQueue queue = sender.getQueue();
+		enqueued += queue.getEnqueued();
+		dropped += queue.getDropped();
+		sent += sender.getSent();
+		failed += sender.getFailed();
+		bytes += sender.getBytes();
+		sender.getSendLatency().addTo(latency);
+	}
+
+	// Messages the producers tried to send, including the dropped ones
+	public long getEnqueued() {
+		return enqueued;
+	}
+
+	public long getSent() {
+		return sent;
+	}
+
+	// Lost in the queues, replaced by a newer value or pushed out when full
+	public long getDropped() {
+		return dropped;
+	}
+
+	// Refused by the network, e.g. receiver unreachable
+	public long getFailed() {
+		return failed;
+	}
+
+	// OSC bytes handed to the transports, without UDP/IP or SLIP overhead
+	public long getBytes() {
+		return bytes;
+	}
+
+	// Duration of one transport send call, e.g. 0.99 for the 99th percentile
+	public long getSendNanos(double fraction) {
+		return LatencyHistogram.percentile(latency, fraction);
+	}
+
+	@Override
+	public String toString() {
+		return "enqueued " + enqueued + " sent " + sent + " dropped " + dropped + " failed " + failed
+				+ " bytes " + bytes + " send p50 " + getSendNanos(0.5) / 1000 + "us p99 "
+				+ getSendNanos(0.99) / 1000 + "us max " + getSendNanos(1) / 1000 + "us";
+	}
+}
@@ -0,0 +1,30 @@
+package com.NewApp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/*
+ * Moves encoded OSC packets over the network. An instance is either opened
+ * towards one host to send, or listening on a local port to receive.
+ */
+public interface OscTransport {
+
+	// Called on the transport's own receive thread, the buffer is only valid during the call
+	interface Listener {
+		void received(ByteBuffer packet);
+	}
+
+	void open(InetAddress address, int port) throws IOException;
+
+	// Sends the bytes between position and limit as one packet. Stream transports
+	// may hold it back until flush()
+	void send(ByteBuffer packet) throws IOException;
+
+	// Called by the sender once its queue is drained
+	void flush() throws IOException;
+
+	void listen(int port, Listener listener) throws IOException;
+
+	void close();
+}
@@ -0,0 +1,211 @@
+package com.NewApp;
+
+import android.util.Log;
+
+/*
+ * Everything done with a Zephyr packet once it arrived: the CRC and length
+ * filter, the sequence trackers, then decoding into the sample bus, the ECG
+ * stream and the telemetry. Plain Java, fed by NewConnectedListener from the
+ * BioHarness or by SessionReplay from a recorded session, on a single thread.
+ */
+public class PacketDecoder {
+
+	private static final Diagnostics.Tag TAG = Diagnostics.tag("bioharness", 5);
+
+	static final int GP_MSG_ID = 0x20;
+	static final int BREATHING_MSG_ID = 0x21;
+	static final int ECG_MSG_ID = 0x22;
+	static final int RtoR_MSG_ID = 0x24;
+	static final int ACCEL_100mg_MSG_ID = 0x2A;
+	static final int SUMMARY_MSG_ID = 0x2B;
+	// payload length of every packet type, what is shorter cannot be decoded
+	static final int GP_LENGTH = 53;
+	static final int BREATHING_LENGTH = 32;
+	static final int ECG_LENGTH = 88;
+	static final int RtoR_LENGTH = 45;
+	static final int ACCEL_100mg_LENGTH = 84;
+	static final int SUMMARY_LENGTH = 71;
+
+	// the decoded values go there, see Communicator.getSampleBus()
+	private final SampleBus bus;
+	private final EcgStream ecg;
+	private final HrvEngine hrv;
+	private final PacketFilter filter;
+	private final SequenceTracker gpSequence;
+	private final SequenceTracker breathingSequence;
+	private final SequenceTracker ecgSequence;
+	private final SequenceTracker rtorSequence;
+	private final SequenceTracker accSequence;
+	private final SequenceTracker summarySequence;
+	private final Communicator communicator;
+	private final TelemetryRecord telemetry = new TelemetryRecord();
+	private final AccelerometerMetrics motion = new AccelerometerMetrics();
+	// last R to R sample, its sign flips on every new beat
+	private int lastRtoR = 0;
+	/*Views decoding the different types of Packets straight from their bytes*/
+	private final ZephyrPayload payload = new ZephyrPayload();
+	private final ZephyrPayload.General GPInfo = new ZephyrPayload.General();
+	private final ZephyrPayload.Ecg ECGInfoPacket = new ZephyrPayload.Ecg();
+	private final ZephyrPayload.Breathing BreathingInfoPacket = new ZephyrPayload.Breathing();
+	private final ZephyrPayload.RtoR RtoRInfoPacket = new ZephyrPayload.RtoR();
+	private final ZephyrPayload.Accelerometer AccInfoPacket = new ZephyrPayload.Accelerometer();
+	private final ZephyrPayload.Summary SummaryInfoPacket = new ZephyrPayload.Summary();
+
+	public PacketDecoder(Communicator communicator) {
+		this.communicator = communicator;
+		bus = communicator.getSampleBus();
+		ecg = communicator.getEcgStream();
+		hrv = communicator.getHrvEngine();
+		gpSequence = communicator.getSequenceTracker("GENERAL");
+		breathingSequence = communicator.getSequenceTracker("BREATHING");
+		ecgSequence = communicator.getSequenceTracker("ECG");
+		rtorSequence = communicator.getSequenceTracker("RR");
+		accSequence = communicator.getSequenceTracker("ACCELEROMETER");
+		summarySequence = communicator.getSequenceTracker("SUMMARY");
+		filter = communicator.getPacketFilter();
+		filter.setMinimumLength(GP_MSG_ID, GP_LENGTH);
+		filter.setMinimumLength(BREATHING_MSG_ID, BREATHING_LENGTH);
+		filter.setMinimumLength(ECG_MSG_ID, ECG_LENGTH);
+		filter.setMinimumLength(RtoR_MSG_ID, RtoR_LENGTH);
+		filter.setMinimumLength(ACCEL_100mg_MSG_ID, ACCEL_100mg_LENGTH);
+		filter.setMinimumLength(SUMMARY_MSG_ID, SUMMARY_LENGTH);
+	}
+	
+	// On a new connection, or a new session replayed
+	public void restart() {
+		for (SequenceTracker tracker : communicator.getSequenceTrackers()) {
+			tracker.restart();
+		}
+		lastRtoR = 0;
+		// the beats of another session must not make up the window
+		hrv.reset();
+		motion.reset();
+	}
+
+	private SequenceTracker sequenceOf(int MsgID) {
+		switch (MsgID) {
+		case GP_MSG_ID: return gpSequence;
+		case BREATHING_MSG_ID: return breathingSequence;
+		case ECG_MSG_ID: return ecgSequence;
+		case RtoR_MSG_ID: return rtorSequence;
+		case ACCEL_100mg_MSG_ID: return accSequence;
+		case SUMMARY_MSG_ID: return summarySequence;
+		}
+		return null;
+	}
+	
+	// Breathing packets hold 18 samples
+	private void fillBreathing(long receivedAt, int missing) {
+		if (missing > EcgStream.MAX_FILL_PACKETS) return;
+		for (int packet = 0; packet < missing; ++packet) {
+			for (int i = 0; i < ZephyrPayload.Breathing.SAMPLES; ++i) {
+				bus.publish(Metric.BREATHING_RAW, receivedAt, SequenceTracker.GAP_MARKER, i == ZephyrPayload.Breathing.SAMPLES - 1);
+			}
+		}
+	}
+	
+	// The packet samples the current interval every 56 ms as a signed 16 bit
+	// value, a new beat is when its sign changes
+	private void addRtoRSample(long receivedAt, int sample) {
+		int value = (short) sample;
+		boolean beat = lastRtoR != 0 && (value < 0) != (lastRtoR < 0);
+		lastRtoR = value;
+		if (!beat) return;
+		int interval = Math.abs(value);
+		if (!hrv.addInterval(interval)) return;
+		bus.publish(Metric.RR_INTERVAL, receivedAt, interval, false);
+		bus.publish(Metric.HRV_RMSSD, receivedAt, hrv.getRmssd(), false);
+		bus.publish(Metric.HRV_SDNN, receivedAt, hrv.getSdnn(), false);
+		bus.publish(Metric.HRV_PNN50, receivedAt, hrv.getPnn50(), false);
+		bus.publish(Metric.HRV_MEAN_HR, receivedAt, hrv.getMeanHeartRate(), true);
+	}
+	
+	private void decodeSummary(byte[] DataArray) {
+		SummaryInfoPacket.wrap(DataArray);
+		telemetry.heartRate = SummaryInfoPacket.heartRate();
+		telemetry.respirationRate = (float) SummaryInfoPacket.respirationRate();
+		telemetry.skinTemperature = (float) SummaryInfoPacket.skinTemperature();
+		telemetry.posture = SummaryInfoPacket.posture();
+		telemetry.activity = (float) SummaryInfoPacket.activity();
+		telemetry.peakAcceleration = (float) SummaryInfoPacket.peakAcceleration();
+		telemetry.batteryVoltage = (float) SummaryInfoPacket.batteryVoltage();
+		telemetry.batteryLevel = SummaryInfoPacket.batteryLevel();
+		telemetry.breathingAmplitude = (float) SummaryInfoPacket.breathingAmplitude();
+		telemetry.breathingNoise = (float) SummaryInfoPacket.breathingNoise();
+		telemetry.breathingConfidence = SummaryInfoPacket.breathingConfidence();
+		telemetry.ecgAmplitude = (float) SummaryInfoPacket.ecgAmplitude();
+		telemetry.ecgNoise = (float) SummaryInfoPacket.ecgNoise();
+		telemetry.heartRateConfidence = SummaryInfoPacket.heartRateConfidence();
+		telemetry.heartRateVariability = SummaryInfoPacket.heartRateVariability();
+		telemetry.systemConfidence = SummaryInfoPacket.systemConfidence();
+		telemetry.gsr = SummaryInfoPacket.gsr();
+		telemetry.rogStatus = SummaryInfoPacket.rogStatus();
+		telemetry.deviceTemperature = (float) SummaryInfoPacket.deviceTemperature();
+	}
+
+	/*
+	 * One packet as given by ZephyrPacketArgs: crcStatus non zero when the CRC
+	 * did not match, payload only valid during the call.
+	 */
+	public void received(int MsgID, byte crcStatus, byte[] DataArray, long receivedAt) {
+		// corrupted packets go no further, not even to the sequence trackers
+		if (!filter.accept(MsgID, crcStatus, DataArray, receivedAt)) return;
+		SequenceTracker sequence = sequenceOf(MsgID);
+		int missing = 0;
+		if (sequence != null) {
+			// every packet type starts with its sequence number
+			missing = sequence.track(payload.wrap(DataArray).sequence());
+			// a repeated or late packet would take the values back in time
+			if (missing < 0) return;
+		}
+		switch (MsgID) {
+		case GP_MSG_ID:
+			GPInfo.wrap(DataArray);
+			int HRate = GPInfo.heartRate();
+			double RespRate = GPInfo.respirationRate();
+			double SkinTempDbl = GPInfo.skinTemperature();
+			int PostureInt = GPInfo.posture();
+			double PeakAccDbl = GPInfo.peakAcceleration();
+			// the last one closes the packet, so the OSC side can bundle them
+			bus.publish(Metric.HEART_RATE, receivedAt, HRate, false);
+			bus.publish(Metric.RESPIRATION_RATE, receivedAt, RespRate, false);
+			bus.publish(Metric.SKIN_TEMPERATURE, receivedAt, SkinTempDbl, false);
+			bus.publish(Metric.POSTURE, receivedAt, PostureInt, false);
+			bus.publish(Metric.PEAK_ACCLERATION, receivedAt, PeakAccDbl, true);
+			// nothing formatted here, and only a field read under the level
+			Diagnostics.Entry entry = Diagnostics.begin(TAG, Log.DEBUG, "general packet");
+			if (entry != null) {
+				entry.add("hr", HRate).add("rr", RespRate).add("temp", SkinTempDbl).add("posture", PostureInt);
+				entry.add("peak", PeakAccDbl).add("rog", GPInfo.rogStatus()).commit();
+			}
+			break;
+		case BREATHING_MSG_ID:
+			if (missing > 0 && communicator.isGapFill()) fillBreathing(receivedAt, missing);
+			BreathingInfoPacket.wrap(DataArray);
+			for (int i = 0; i < ZephyrPayload.Breathing.SAMPLES; ++i) {
+				bus.publish(Metric.BREATHING_RAW, receivedAt, BreathingInfoPacket.sample(i), i == ZephyrPayload.Breathing.SAMPLES - 1);
+			}
+			break;
+		case ECG_MSG_ID:
+			// unpacked straight into the ring of the stream
+			ecg.write(missing, ECGInfoPacket.wrap(DataArray), communicator.isGapFill());
+			break;
+		case RtoR_MSG_ID:
+			RtoRInfoPacket.wrap(DataArray);
+			for (int i = 0; i < ZephyrPayload.RtoR.SAMPLES; ++i) {
+				addRtoRSample(receivedAt, RtoRInfoPacket.sample(i));
+			}
+			break;
+		case ACCEL_100mg_MSG_ID:
+			motion.update(AccInfoPacket.wrap(DataArray));
+			bus.publish(Metric.ACTIVITY, receivedAt, motion.getActivity(), false);
+			bus.publish(Metric.STEP_CADENCE, receivedAt, motion.getCadence(), false);
+			bus.publish(Metric.STEP_COUNT, receivedAt, motion.getStepCount(), true);
+			break;
+		case SUMMARY_MSG_ID:
+			decodeSummary(DataArray);
+			communicator.sendingTelemetry(telemetry);
+			break;
+		}
+	}
+}
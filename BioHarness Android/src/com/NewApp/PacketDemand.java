@@ -0,0 +1,176 @@
+package com.NewApp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+import zephyr.android.BioHarnessBT.PacketTypeRequest;
+import zephyr.android.BioHarnessBT.ZephyrProtocol;
+
+/*
+ * Which packet types the BioHarness sends, from what is consumed downstream: a
+ * type is on while one of the OSC streams decoded from it is enabled (see
+ * Communicator.setStreamEnabled()) or something in the app holds it, e.g. the UI
+ * showing the general packet values. Everything else stays off, saving
+ * Bluetooth bandwidth, the battery of the device and the phone's CPU.
+ *
+ * Switching a type costs a command to the device that waits for its ack, so it
+ * is done on this thread, never on the listener thread that delivers the ack.
+ */
+public class PacketDemand extends Thread {
+
+	public static final int GENERAL = 0;
+	public static final int BREATHING = 1;
+	public static final int ECG = 2;
+	public static final int RR = 3;
+	public static final int ACCELEROMETER = 4;
+	public static final int SUMMARY = 5;
+	public static final int LOGGING = 6;
+	private static final int TYPES = 7;
+
+	// same names as the sequence trackers
+	private static final String[] NAMES = {"GENERAL", "BREATHING", "ECG", "RR", "ACCELEROMETER", "SUMMARY", "LOGGING"};
+	// streams decoded from every type, logging packets are not decoded
+	private static final String[][] STREAMS = {
+		{"HEART_RATE", "RESPIRATION_RATE", "SKIN_TEMPERATURE", "POSTURE", "PEAK_ACCLERATION"},
+		{"BREATHING_RAW"},
+		{"ECG"},
+		{"RR_INTERVAL", "HRV_RMSSD", "HRV_SDNN", "HRV_PNN50", "HRV_MEAN_HR"},
+		{"ACTIVITY", "STEP_CADENCE", "STEP_COUNT"},
+		{"TELEMETRY"},
+		{}
+	};
+
+	private static final Diagnostics.Tag TAG = Diagnostics.tag("bioharness", 5);
+	// the protocol enables the requested types itself at first, leave it alone meanwhile
+	private static final long STARTUP_MILLIS = 5000;
+	// retry of the types the device did not ack
+	private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Communicator communicator;
+	private final AtomicIntegerArray holds = new AtomicIntegerArray(TYPES);
+	private final boolean[] wanted = new boolean[TYPES];
+	private volatile boolean running = true;
+
+	// what the device was last told, set by request() before attach() then on this thread only
+	private final boolean[] applied = new boolean[TYPES];
+	private volatile ZephyrProtocol protocol;
+	private volatile long attachedAt;
+
+	public PacketDemand(Communicator communicator) {
+		super("PacketDemand");
+		this.communicator = communicator;
+		setDaemon(true);
+	}
+
+	// Keeps a type on whatever the streams, until release()
+	public void hold(int type) {
+		holds.incrementAndGet(type);
+		update();
+	}
+
+	public void release(int type) {
+		holds.decrementAndGet(type);
+		update();
+	}
+
+	// After a stream was switched on or off
+	public void update() {
+		synchronized (wanted) {
+			for (int type = 0; type < TYPES; ++type) {
+				wanted[type] = holds.get(type) > 0 || anyEnabled(STREAMS[type]);
+			}
+		}
+		LockSupport.unpark(this);
+	}
+
+	private boolean anyEnabled(String[] streams) {
+		for (String stream : streams) {
+			if (communicator.isStreamEnabled(stream)) return true;
+		}
+		return false;
+	}
+
+	// Names of the OSC streams decoded from type
+	public static String[] streams(int type) {
+		return STREAMS[type].clone();
+	}
+
+	public boolean isWanted(int type) {
+		synchronized (wanted) {
+			return wanted[type];
+		}
+	}
+
+	/*
+	 * On connect, before the protocol is created with request: the device starts
+	 * with only the wanted types, then follows the demand once attached.
+	 */
+	public void request(PacketTypeRequest request) {
+		update();
+		synchronized (wanted) {
+			request.GP_ENABLE = wanted[GENERAL];
+			request.BREATHING_ENABLE = wanted[BREATHING];
+			request.ECG_ENABLE = wanted[ECG];
+			request.RtoR_ENABLE = wanted[RR];
+			request.ACCELEROMETER_ENABLE = wanted[ACCELEROMETER];
+			request.SUMMARY_ENABLE = wanted[SUMMARY];
+			request.LOGGING_ENABLE = wanted[LOGGING];
+			System.arraycopy(wanted, 0, applied, 0, TYPES);
+		}
+	}
+
+	public void attach(ZephyrProtocol protocol) {
+		attachedAt = System.currentTimeMillis();
+		this.protocol = protocol;
+		LockSupport.unpark(this);
+	}
+
+	public void detach() {
+		protocol = null;
+	}
+
+	@Override
+	public void run() {
+		boolean[] target = new boolean[TYPES];
+		while (running) {
+			LockSupport.parkNanos(this, RETRY_NANOS);
+			ZephyrProtocol current = protocol;
+			if (current == null || System.currentTimeMillis() - attachedAt < STARTUP_MILLIS) continue;
+			synchronized (wanted) {
+				System.arraycopy(wanted, 0, target, 0, TYPES);
+			}
+			for (int type = 0; type < TYPES && protocol == current; ++type) {
+				if (target[type] == applied[type]) continue;
+				if (set(current, type, target[type])) {
+					applied[type] = target[type];
+					Diagnostics.log(TAG, Log.INFO, target[type] ? "enabled" : "disabled", NAMES[type]);
+				}
+			}
+		}
+	}
+
+	// Returns true once the device acked
+	private boolean set(ZephyrProtocol protocol, int type, boolean enabled) {
+		try {
+			switch (type) {
+			case GENERAL: return protocol.SetGeneralPacket(enabled);
+			case BREATHING: return protocol.SetBreathingPacket(enabled);
+			case ECG: return protocol.SetECGPacket(enabled);
+			case RR: return protocol.SetRtoRPacket(enabled);
+			case ACCELEROMETER: return protocol.SetAccelerometerPacket(enabled);
+			case SUMMARY: return protocol.SetSummaryDataPacket(enabled);
+			case LOGGING: return protocol.SetLoggingDataPacket(enabled);
+			}
+		} catch (RuntimeException e) {
+			Diagnostics.log(TAG, Log.INFO, NAMES[type], e);
+		}
+		return false;
+	}
+
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+}
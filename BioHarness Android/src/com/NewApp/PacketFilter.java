@@ -0,0 +1,132 @@
+package com.NewApp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Keeps corrupted packets away from the decoders: a packet whose CRC failed, or
+ * whose payload is shorter than its type needs, is rejected before anything is
+ * decoded or sent, and counted by message id. Rejected packets can be copied
+ * to a quarantine of the last ones for inspection, into preallocated slots so
+ * a storm of bad packets allocates nothing.
+ *
+ * accept() is called on the listener thread only.
+ */
+public class PacketFilter {
+
+	public static final int CRC_FAILED = 1;
+	public static final int TOO_SHORT = 2;
+
+	public static final int QUARANTINE_SIZE = 32;
+	// the length byte of a Zephyr packet caps the payload
+	private static final int MAX_PAYLOAD = 255;
+
+	public static class QuarantinedPacket {
+		public final int msgId;
+		public final int reason;
+		public final long timeMillis;
+		public final byte[] payload;
+
+		QuarantinedPacket(int msgId, int reason, long timeMillis, byte[] payload) {
+			this.msgId = msgId;
+			this.reason = reason;
+			this.timeMillis = timeMillis;
+			this.payload = payload;
+		}
+	}
+
+	private final int[] minimumLength = new int[256];
+	private final AtomicLongArray crcFailures = new AtomicLongArray(256);
+	private final AtomicLongArray tooShort = new AtomicLongArray(256);
+
+	private volatile boolean quarantine = false;
+	private final byte[][] slots = new byte[QUARANTINE_SIZE][MAX_PAYLOAD];
+	private final int[] slotLength = new int[QUARANTINE_SIZE];
+	private final int[] slotMsgId = new int[QUARANTINE_SIZE];
+	private final int[] slotReason = new int[QUARANTINE_SIZE];
+	private final long[] slotTime = new long[QUARANTINE_SIZE];
+	private long quarantined = 0;
+
+	// Payloads of msgId shorter than length are rejected
+	public void setMinimumLength(int msgId, int length) {
+		minimumLength[msgId & 0xFF] = length;
+	}
+
+	// crcStatus as given by ZephyrPacketArgs, non zero when the CRC did not match
+	public boolean accept(int msgId, byte crcStatus, byte[] payload, long timeMillis) {
+		msgId &= 0xFF;
+		int reason;
+		if (crcStatus != 0) {
+			crcFailures.incrementAndGet(msgId);
+			reason = CRC_FAILED;
+		} else if (payload == null || payload.length < minimumLength[msgId]) {
+			tooShort.incrementAndGet(msgId);
+			reason = TOO_SHORT;
+		} else {
+			return true;
+		}
+		if (quarantine) quarantine(msgId, reason, payload, timeMillis);
+		return false;
+	}
+
+	private synchronized void quarantine(int msgId, int reason, byte[] payload, long timeMillis) {
+		int slot = (int) (quarantined++ % QUARANTINE_SIZE);
+		int length = payload == null ? 0 : Math.min(payload.length, MAX_PAYLOAD);
+		if (length > 0) System.arraycopy(payload, 0, slots[slot], 0, length);
+		slotLength[slot] = length;
+		slotMsgId[slot] = msgId;
+		slotReason[slot] = reason;
+		slotTime[slot] = timeMillis;
+	}
+
+	// Copies of the last rejected packets, oldest first
+	public synchronized List<QuarantinedPacket> getQuarantine() {
+		int count = (int) Math.min(quarantined, QUARANTINE_SIZE);
+		List<QuarantinedPacket> packets = new ArrayList<QuarantinedPacket>(count);
+		for (long i = quarantined - count; i < quarantined; ++i) {
+			int slot = (int) (i % QUARANTINE_SIZE);
+			byte[] payload = new byte[slotLength[slot]];
+			System.arraycopy(slots[slot], 0, payload, 0, payload.length);
+			packets.add(new QuarantinedPacket(slotMsgId[slot], slotReason[slot], slotTime[slot], payload));
+		}
+		return packets;
+	}
+
+	public synchronized void clearQuarantine() {
+		quarantined = 0;
+	}
+
+	// Off by default
+	public void setQuarantine(boolean enabled) {
+		quarantine = enabled;
+	}
+
+	public boolean isQuarantine() {
+		return quarantine;
+	}
+
+	public long getCrcFailures(int msgId) {
+		return crcFailures.get(msgId & 0xFF);
+	}
+
+	public long getTooShort(int msgId) {
+		return tooShort.get(msgId & 0xFF);
+	}
+
+	public long getCrcFailures() {
+		long total = 0;
+		for (int i = 0; i < 256; ++i) {
+			total += crcFailures.get(i);
+		}
+		return total;
+	}
+
+	public long getTooShort() {
+		long total = 0;
+		for (int i = 0; i < 256; ++i) {
+			total += tooShort.get(i);
+		}
+		return total;
+	}
+}
@@ -0,0 +1,88 @@
+package com.NewApp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Bounded lock-free queue. Every slot carries a sequence number that tells
+ * producers and consumers whose turn it is, so neither side ever takes a lock
+ * and offer() on a full buffer simply returns false instead of blocking.
+ * Safe for several producers and several consumers.
+ */
+public class RingBuffer<E> {
+
+	private final int mask;
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	public RingBuffer(int capacity) {
+		// round up to a power of two so the index is a simple mask
+		int size = 1;
+		while (size < capacity) size <<= 1;
+		mask = size - 1;
+		slots = new AtomicReferenceArray<E>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; ++i) {
+			sequences.set(i, i);
+		}
+	}
+
+	public boolean offer(E element) {
+		long pos = tail.get();
+		while (true) {
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slots.set(index, element);
+					sequences.set(index, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			} else if (dif < 0) {
+				// full
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	public E poll() {
+		long pos = head.get();
+		while (true) {
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - (pos + 1);
+			if (dif == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					E element = slots.get(index);
+					slots.set(index, null);
+					sequences.set(index, pos + mask + 1);
+					return element;
+				}
+				pos = head.get();
+			} else if (dif < 0) {
+				// empty
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,39 @@
+package com.NewApp;
+
+/*
+ * One decoded value on the SampleBus. The records are preallocated in the bus
+ * and overwritten, so a consumer must copy what it keeps before returning.
+ */
+public class Sample {
+
+	Metric metric;
+	// wall clock time the packet was received
+	long timeMillis;
+	double value;
+	// last sample decoded from its packet, e.g. the end of a breathing chunk
+	boolean last;
+
+	public Metric getMetric() {
+		return metric;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public int getInt() {
+		return (int) value;
+	}
+
+	public float getFloat() {
+		return (float) value;
+	}
+
+	public boolean isLast() {
+		return last;
+	}
+}
@@ -0,0 +1,180 @@
+package com.NewApp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+/*
+ * Hands the decoded samples from the BioHarness listener thread to the
+ * consumers (OSC, recording...) without allocating anything. There is a single
+ * producer writing into preallocated Sample records, and every consumer has its
+ * own thread and its own position in the ring, so each sees every sample in
+ * order. The producer never waits: if the slowest consumer is a full ring
+ * behind, new samples are dropped and counted.
+ *
+ * Consumers that only need the current value, like the UI, read getLatest() at
+ * their own rate instead of subscribing.
+ */
+public class SampleBus {
+
+	public interface Consumer {
+		// On the consumer's thread, the sample is only valid during the call
+		void onSample(Sample sample);
+	}
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+	private static final Diagnostics.Tag TAG = Diagnostics.tag("sample bus", 5);
+
+	private final int mask;
+	private final Sample[] ring;
+	// last sequence published, consumers read up to it
+	private final AtomicLong cursor = new AtomicLong(-1);
+	// replaced, never modified, so the producer needs no lock
+	private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+	// smallest consumer position seen by the producer, refreshed only when the ring looks full
+	private long gate = -1;
+	private final AtomicLong dropped = new AtomicLong();
+
+	// last value and time of every metric, as raw double bits
+	private final AtomicLongArray latestValues = new AtomicLongArray(Metric.values().length);
+	private final AtomicLongArray latestTimes = new AtomicLongArray(Metric.values().length);
+
+	public SampleBus(int capacity) {
+		int size = 1;
+		while (size < capacity) size <<= 1;
+		mask = size - 1;
+		ring = new Sample[size];
+		for (int i = 0; i < size; ++i) {
+			ring[i] = new Sample();
+		}
+	}
+
+	/*
+	 * Producer side, to be called from a single thread. last marks the end of a
+	 * packet and wakes the consumers. Returns false if the sample was dropped.
+	 */
+	public boolean publish(Metric metric, long timeMillis, double value, boolean last) {
+		latestValues.set(metric.ordinal(), Double.doubleToRawLongBits(value));
+		latestTimes.set(metric.ordinal(), timeMillis);
+		long sequence = cursor.get() + 1;
+		if (sequence - ring.length > gate) {
+			gate = slowestConsumer(sequence - 1);
+			if (sequence - ring.length > gate) {
+				dropped.incrementAndGet();
+				if (last) wakeConsumers();
+				return false;
+			}
+		}
+		Sample sample = ring[(int) (sequence & mask)];
+		sample.metric = metric;
+		sample.timeMillis = timeMillis;
+		sample.value = value;
+		sample.last = last;
+		// makes the fields above visible to the consumers
+		cursor.set(sequence);
+		if (last) wakeConsumers();
+		return true;
+	}
+
+	private long slowestConsumer(long min) {
+		for (Subscription subscription : subscriptions) {
+			min = Math.min(min, subscription.position.get());
+		}
+		return min;
+	}
+
+	private void wakeConsumers() {
+		for (Subscription subscription : subscriptions) {
+			LockSupport.unpark(subscription);
+		}
+	}
+
+	// Starts a thread feeding consumer with every sample published from now on
+	public synchronized Subscription subscribe(String name, Consumer consumer) {
+		Subscription subscription = new Subscription(name, consumer, cursor.get());
+		Subscription[] updated = new Subscription[subscriptions.length + 1];
+		System.arraycopy(subscriptions, 0, updated, 0, subscriptions.length);
+		updated[subscriptions.length] = subscription;
+		subscriptions = updated;
+		subscription.start();
+		return subscription;
+	}
+
+	public synchronized void unsubscribe(Subscription subscription) {
+		Subscription[] current = subscriptions;
+		int index = -1;
+		for (int i = 0; i < current.length; ++i) {
+			if (current[i] == subscription) index = i;
+		}
+		if (index < 0) return;
+		Subscription[] updated = new Subscription[current.length - 1];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(current, index + 1, updated, index, updated.length - index);
+		subscriptions = updated;
+		subscription.shutdown();
+	}
+
+	// Last value published for the metric, NaN if none yet
+	public double getLatest(Metric metric) {
+		if (latestTimes.get(metric.ordinal()) == 0) return Double.NaN;
+		return Double.longBitsToDouble(latestValues.get(metric.ordinal()));
+	}
+
+	// Time of the last value published for the metric, 0 if none yet
+	public long getLatestTime(Metric metric) {
+		return latestTimes.get(metric.ordinal());
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public int capacity() {
+		return ring.length;
+	}
+
+	public class Subscription extends Thread {
+
+		private final Consumer consumer;
+		// last sequence handed to the consumer
+		final AtomicLong position;
+		private volatile boolean running = true;
+
+		Subscription(String name, Consumer consumer, long position) {
+			super(name);
+			this.consumer = consumer;
+			this.position = new AtomicLong(position);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long next = position.get() + 1;
+			while (running) {
+				long available = cursor.get();
+				if (next > available) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+					continue;
+				}
+				for (; next <= available; ++next) {
+					try {
+						consumer.onSample(ring[(int) (next & mask)]);
+					} catch (RuntimeException e) {
+						Diagnostics.log(TAG, Log.INFO, getName(), e);
+					}
+					// frees the slot for the producer
+					position.set(next);
+				}
+			}
+		}
+
+		public void shutdown() {
+			running = false;
+			LockSupport.unpark(this);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.NewApp;
+
+/*
+ * Continuity of one Zephyr packet stream, from the 8 bit sequence number every
+ * packet carries. A packet is either the next one, a jump forward over missing
+ * packets, a repeat of the last one, or one from behind that arrived late.
+ * Only counters, so tracking allocates nothing.
+ *
+ * Bluetooth only reorders packets by a few, so a packet further behind than
+ * MAX_REORDER, or RESYNC_AFTER late ones in a row that follow each other, mean
+ * the stream jumped (a long stall, the device restarted its counter): the
+ * sequence starts again from there rather than dropping what follows.
+ *
+ * Written on the listener thread, the counters can be read from anywhere.
+ * Packets lost here were lost over Bluetooth, before the OSC senders.
+ */
+public class SequenceTracker {
+
+	// marker written in the waveforms in place of the samples of missing packets
+	public static final short GAP_MARKER = Short.MIN_VALUE;
+
+	// returned by track() for a packet to throw away
+	public static final int DUPLICATE = -1;
+	public static final int LATE = -2;
+
+	// further behind than that it is not a late packet but a jump
+	public static final int MAX_REORDER = 16;
+	public static final int RESYNC_AFTER = 3;
+
+	private final String name;
+	private int last = -1;
+	// the sequence numbers jumped over and not received since, one bit each
+	private final long[] skipped = new long[4];
+	private int lastLate = -1;
+	private int lateRun = 0;
+	private volatile long received = 0;
+	private volatile long missing = 0;
+	private volatile long gaps = 0;
+	private volatile long duplicates = 0;
+	private volatile long late = 0;
+	private volatile long resyncs = 0;
+
+	public SequenceTracker(String name) {
+		this.name = name;
+	}
+
+	// Returns the number of packets missing before this one, or DUPLICATE or LATE
+	public int track(int sequence) {
+		sequence &= 0xFF;
+		received = received + 1;
+		if (last < 0) {
+			last = sequence;
+			return 0;
+		}
+		int ahead = (sequence - last) & 0xFF;
+		if (ahead == 0) {
+			duplicates = duplicates + 1;
+			return DUPLICATE;
+		}
+		if (ahead >= 128) {
+			int behind = 256 - ahead;
+			lateRun = sequence == ((lastLate + 1) & 0xFF) ? lateRun + 1 : 1;
+			lastLate = sequence;
+			if (behind > MAX_REORDER || lateRun >= RESYNC_AFTER) {
+				resync(sequence);
+				return 0;
+			}
+			late = late + 1;
+			// only what was counted as missing when we jumped over it
+			if (isSkipped(sequence)) {
+				setSkipped(sequence, false);
+				missing = missing - 1;
+			}
+			return LATE;
+		}
+		lateRun = 0;
+		last = sequence;
+		// received now, a number we jumped over 256 packets ago is not missing any more
+		setSkipped(sequence, false);
+		if (ahead == 1) return 0;
+		for (int i = 1; i < ahead; ++i) {
+			setSkipped((sequence - i) & 0xFF, true);
+		}
+		gaps = gaps + 1;
+		missing = missing + ahead - 1;
+		return ahead - 1;
+	}
+
+	private void resync(int sequence) {
+		resyncs = resyncs + 1;
+		last = sequence;
+		lateRun = 0;
+		lastLate = -1;
+		clearSkipped();
+	}
+
+	private boolean isSkipped(int sequence) {
+		return (skipped[sequence >> 6] & (1L << sequence)) != 0;
+	}
+
+	private void setSkipped(int sequence, boolean value) {
+		if (value) {
+			skipped[sequence >> 6] |= 1L << sequence;
+		} else {
+			skipped[sequence >> 6] &= ~(1L << sequence);
+		}
+	}
+
+	private void clearSkipped() {
+		for (int i = 0; i < skipped.length; ++i) {
+			skipped[i] = 0;
+		}
+	}
+
+	// A new connection starts a new sequence, the counters are kept
+	public void restart() {
+		last = -1;
+		lateRun = 0;
+		lastLate = -1;
+		clearSkipped();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	// Packets jumped over and not received late
+	public long getMissing() {
+		return missing;
+	}
+
+	// Times the sequence jumped forward
+	public long getGaps() {
+		return gaps;
+	}
+
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	public long getLate() {
+		return late;
+	}
+
+	// Times the sequence started again after a jump too large to be a reorder
+	public long getResyncs() {
+		return resyncs;
+	}
+}
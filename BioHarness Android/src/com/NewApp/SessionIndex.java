@@ -0,0 +1,267 @@
+package com.NewApp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Sparse time index of a recorded session, next to its segments, with a
+ * summary of every INTERVAL_MILLIS of packets:
+ *
+ *	header	int MAGIC, short VERSION, short ENTRY_SIZE, int interval (ms), int 0,
+ *		long session start (ms since epoch), long session start (System.nanoTime())
+ *	entries	long receive time of the first packet, int segment, int offset of its record,
+ *		int packets, short rejected (CRC failed), byte min and max heart rate,
+ *		short min and max ECG sample, short min and max breathing sample
+ *
+ * Seeking to a time is a binary search over the mapped entries and reading
+ * from one record on (SessionReader.seek()), and a scrub bar only needs the
+ * entries. SessionRecorder writes it while recording, build() writes it for
+ * a session that has none.
+ */
+public class SessionIndex {
+
+	public static final int MAGIC = 0x5A494458; // "ZIDX"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final int ENTRY_SIZE = 32;
+	public static final int INTERVAL_MILLIS = 1000;
+	public static final String SUFFIX = ".zidx";
+
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final long startMillis;
+	private final long startNanos;
+
+	public SessionIndex(File directory, String session) throws IOException {
+		File file = new File(directory, session + SUFFIX);
+		RandomAccessFile access = new RandomAccessFile(file, "r");
+		try {
+			buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+		} finally {
+			access.close();
+		}
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException(file.getName() + " is not a session index");
+		if (buffer.getShort(4) != VERSION || buffer.getShort(6) != ENTRY_SIZE) throw new IOException(file.getName() + " has another version");
+		startMillis = buffer.getLong(16);
+		startNanos = buffer.getLong(24);
+		// an entry cut short by a crash is left out
+		size = (buffer.capacity() - HEADER_SIZE) / ENTRY_SIZE;
+	}
+
+	// Indexes a session recorded without one, reading all of it once
+	public static void build(File directory, String session) throws IOException {
+		SessionReader reader = new SessionReader(directory, session);
+		Builder builder = new Builder(new File(directory, session + SUFFIX), reader.getStartMillis(), reader.getStartNanos());
+		try {
+			while (reader.next()) {
+				byte[] payload = reader.getPayload();
+				builder.add(reader.getSegment(), reader.getOffset(), reader.getReceivedNanos(), reader.getMsgId(),
+					reader.getCrcStatus(), payload, payload.length);
+			}
+		} finally {
+			reader.close();
+			builder.close();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * The last entry starting at or before timeMillis, so its packets hold the
+	 * time if it was recorded at all. 0 before the first one, -1 when empty.
+	 */
+	public int find(long timeMillis) {
+		long nanos = toNanos(timeMillis);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (getNanos(middle) <= nanos) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return size == 0 ? -1 : Math.max(high, 0);
+	}
+
+	long toNanos(long timeMillis) {
+		return startNanos + (timeMillis - startMillis) * 1000000;
+	}
+
+	private int at(int entry) {
+		return HEADER_SIZE + entry * ENTRY_SIZE;
+	}
+
+	long getNanos(int entry) {
+		return buffer.getLong(at(entry));
+	}
+
+	// Wall clock time of the first packet of the entry
+	public long getTimeMillis(int entry) {
+		return startMillis + (getNanos(entry) - startNanos) / 1000000;
+	}
+
+	public int getSegment(int entry) {
+		return buffer.getInt(at(entry) + 8);
+	}
+
+	public int getOffset(int entry) {
+		return buffer.getInt(at(entry) + 12);
+	}
+
+	public int getPackets(int entry) {
+		return buffer.getInt(at(entry) + 16);
+	}
+
+	public int getRejected(int entry) {
+		return buffer.getShort(at(entry) + 20) & 0xFFFF;
+	}
+
+	// 0 when no general packet came during the entry
+	public int getHeartRateMin(int entry) {
+		return buffer.get(at(entry) + 22) & 0xFF;
+	}
+
+	public int getHeartRateMax(int entry) {
+		return buffer.get(at(entry) + 23) & 0xFF;
+	}
+
+	// min above max when no ECG packet came during the entry
+	public short getEcgMin(int entry) {
+		return buffer.getShort(at(entry) + 24);
+	}
+
+	public short getEcgMax(int entry) {
+		return buffer.getShort(at(entry) + 26);
+	}
+
+	public short getBreathingMin(int entry) {
+		return buffer.getShort(at(entry) + 28);
+	}
+
+	public short getBreathingMax(int entry) {
+		return buffer.getShort(at(entry) + 30);
+	}
+
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/*
+	 * Writes the entries, the one being summed up only once the next one starts
+	 * or on close(). Used by one thread, add() allocates nothing.
+	 */
+	static class Builder {
+		private static final int BATCH = 64;
+
+		private final FileOutputStream stream;
+		private final FileChannel channel;
+		private final ByteBuffer batch = ByteBuffer.allocate(BATCH * ENTRY_SIZE);
+		private final long startNanos;
+		private final long intervalNanos = INTERVAL_MILLIS * 1000000L;
+		private final ZephyrPayload.Ecg ecg = new ZephyrPayload.Ecg();
+		private final ZephyrPayload.Breathing breathing = new ZephyrPayload.Breathing();
+
+		private boolean open = false;
+		private long nextNanos;
+		private long nanos;
+		private int segment;
+		private int offset;
+		private int packets;
+		private int rejected;
+		private int heartRateMin, heartRateMax;
+		private int ecgMin, ecgMax;
+		private int breathingMin, breathingMax;
+
+		Builder(File file, long startMillis, long startNanos) throws IOException {
+			this.startNanos = startNanos;
+			nextNanos = startNanos;
+			stream = new FileOutputStream(file);
+			channel = stream.getChannel();
+			batch.putInt(MAGIC).putShort(VERSION).putShort((short) ENTRY_SIZE).putInt(INTERVAL_MILLIS).putInt(0);
+			batch.putLong(startMillis).putLong(startNanos);
+			flush();
+		}
+
+		// Every record in order, with the segment and offset it starts at
+		void add(int segment, int offset, long receivedNanos, int msgId, byte crcStatus, byte[] payload, int length) throws IOException {
+			if (!open || receivedNanos >= nextNanos) {
+				if (open) end();
+				begin(segment, offset, receivedNanos);
+			}
+			++packets;
+			if (crcStatus != 0) {
+				++rejected;
+				return;
+			}
+			if (msgId == PacketDecoder.GP_MSG_ID && length >= PacketDecoder.GP_LENGTH) {
+				int heartRate = payload[9] & 0xFF;
+				if (heartRate < heartRateMin) heartRateMin = heartRate;
+				if (heartRate > heartRateMax) heartRateMax = heartRate;
+			} else if (msgId == PacketDecoder.ECG_MSG_ID && length >= PacketDecoder.ECG_LENGTH) {
+				ecg.wrap(payload);
+				for (int i = 0; i < ZephyrPayload.Ecg.SAMPLES; ++i) {
+					int sample = ecg.sample(i);
+					if (sample < ecgMin) ecgMin = sample;
+					if (sample > ecgMax) ecgMax = sample;
+				}
+			} else if (msgId == PacketDecoder.BREATHING_MSG_ID && length >= PacketDecoder.BREATHING_LENGTH) {
+				breathing.wrap(payload);
+				for (int i = 0; i < ZephyrPayload.Breathing.SAMPLES; ++i) {
+					int sample = breathing.sample(i);
+					if (sample < breathingMin) breathingMin = sample;
+					if (sample > breathingMax) breathingMax = sample;
+				}
+			}
+		}
+
+		private void begin(int segment, int offset, long receivedNanos) {
+			open = true;
+			nanos = receivedNanos;
+			this.segment = segment;
+			this.offset = offset;
+			// the next entry starts on the interval after this packet, pauses have none
+			nextNanos = startNanos + ((receivedNanos - startNanos) / intervalNanos + 1) * intervalNanos;
+			packets = rejected = 0;
+			heartRateMin = 255;
+			heartRateMax = 0;
+			ecgMin = breathingMin = Short.MAX_VALUE;
+			ecgMax = breathingMax = Short.MIN_VALUE;
+		}
+
+		private void end() throws IOException {
+			batch.putLong(nanos).putInt(segment).putInt(offset).putInt(packets).putShort((short) Math.min(rejected, 0xFFFF));
+			// no heart rate reads as 0 to 0
+			batch.put((byte) (heartRateMax == 0 ? 0 : heartRateMin)).put((byte) heartRateMax);
+			batch.putShort((short) ecgMin).putShort((short) ecgMax).putShort((short) breathingMin).putShort((short) breathingMax);
+			open = false;
+			if (!batch.hasRemaining()) flush();
+		}
+
+		// Writes out the finished entries
+		void flush() throws IOException {
+			batch.flip();
+			while (batch.hasRemaining()) {
+				channel.write(batch);
+			}
+			batch.clear();
+		}
+
+		void close() throws IOException {
+			try {
+				if (open) end();
+				flush();
+			} finally {
+				stream.close();
+			}
+		}
+	}
+}
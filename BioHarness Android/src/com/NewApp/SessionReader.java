@@ -0,0 +1,227 @@
+package com.NewApp;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Reads back a session written by SessionRecorder, one packet after the other
+ * through all of its segments:
+ *
+ *	SessionReader reader = new SessionReader(directory, "session-1365432000000");
+ *	while (reader.next()) decoder.received(reader.getMsgId(), reader.getCrcStatus(), reader.getPayload(), ...);
+ *	reader.close();
+ *
+ * Segments are mapped read only. The payload array is the same for every packet
+ * of a given length, so it is only valid until the next call to next(), like
+ * the array of ZephyrPacketArgs. seek() goes to a time through the SessionIndex
+ * of the session, or from the start when it has none.
+ */
+public class SessionReader {
+
+	private final File directory;
+	private final String name;
+	private final File[] segments;
+	private int nextSegment = 0;
+	private MappedByteBuffer buffer;
+	private long startMillis;
+	private long startNanos;
+
+	// one array per payload length, the filter checks the length of the array
+	private final byte[][] payloads = new byte[SessionRecorder.MAX_PAYLOAD + 1][];
+	private int msgId;
+	private byte crcStatus;
+	private byte[] payload;
+	private long receivedNanos;
+	private int offset;
+	private long read = 0;
+	private SessionIndex index;
+	private boolean indexLoaded = false;
+
+	public SessionReader(File directory, String session) throws IOException {
+		this.directory = directory;
+		name = session;
+		List<File> files = new ArrayList<File>();
+		for (int index = 0; ; ++index) {
+			File file = new File(directory, SessionRecorder.segmentName(session, index));
+			if (!file.isFile()) break;
+			files.add(file);
+		}
+		if (files.isEmpty()) throw new IOException("no segment of " + session + " in " + directory);
+		segments = files.toArray(new File[files.size()]);
+		openNext();
+		startMillis = buffer.getLong(12);
+		startNanos = buffer.getLong(20);
+	}
+
+	// Names of the sessions recorded in directory, oldest first
+	public static String[] sessions(File directory) {
+		final String first = SessionRecorder.segmentName("", 0);
+		String[] files = directory.list(new FilenameFilter() {
+			public boolean accept(File dir, String file) {
+				return file.startsWith("session-") && file.endsWith(first);
+			}
+		});
+		if (files == null) return new String[0];
+		for (int i = 0; i < files.length; ++i) {
+			files[i] = files[i].substring(0, files[i].length() - first.length());
+		}
+		// the names hold the start time, all of the same length
+		Arrays.sort(files);
+		return files;
+	}
+
+	private boolean openNext() throws IOException {
+		if (nextSegment == segments.length) return false;
+		open(nextSegment);
+		return true;
+	}
+
+	private void open(int segment) throws IOException {
+		File file = segments[segment];
+		RandomAccessFile access = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid once the file is closed
+			buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+		} finally {
+			access.close();
+		}
+		if (buffer.remaining() < SessionRecorder.HEADER_SIZE || buffer.getInt(0) != SessionRecorder.MAGIC) {
+			throw new IOException(file.getName() + " is not a session segment");
+		}
+		if (buffer.getShort(4) != SessionRecorder.VERSION) {
+			throw new IOException(file.getName() + " has version " + buffer.getShort(4));
+		}
+		if (buffer.getInt(8) != segment) throw new IOException(file.getName() + " is out of order");
+		buffer.position(SessionRecorder.HEADER_SIZE);
+		nextSegment = segment + 1;
+	}
+
+	// Moves to the next packet, false at the end of the session
+	public boolean next() throws IOException {
+		if (buffer == null) return false;
+		while (!atRecord(buffer)) {
+			if (!openNext()) return false;
+		}
+		offset = buffer.position();
+		buffer.get();
+		msgId = buffer.get() & 0xFF;
+		crcStatus = buffer.get();
+		int length = buffer.get() & 0xFF;
+		receivedNanos = buffer.getLong();
+		if (buffer.remaining() < length) throw new IOException("record cut short in " + segments[nextSegment - 1].getName());
+		payload = payloads[length];
+		if (payload == null) payload = payloads[length] = new byte[length];
+		buffer.get(payload, 0, length);
+		++read;
+		return true;
+	}
+
+	/*
+	 * Moves to the first packet received at or after timeMillis, next() reads it.
+	 * With an index only the packets of one index entry are gone over.
+	 */
+	public void seek(long timeMillis) throws IOException {
+		SessionIndex index = getIndex();
+		int entry = index == null ? -1 : index.find(timeMillis);
+		if (entry < 0) {
+			seek(0, SessionRecorder.HEADER_SIZE);
+		} else {
+			seek(index.getSegment(entry), index.getOffset(entry));
+		}
+		long nanos = startNanos + (timeMillis - startMillis) * 1000000;
+		while (true) {
+			while (!atRecord(buffer)) {
+				if (!openNext()) return;
+			}
+			int position = buffer.position();
+			if (buffer.getLong(position + 4) >= nanos) return;
+			buffer.position(position + SessionRecorder.RECORD_HEADER_SIZE + (buffer.get(position + 3) & 0xFF));
+		}
+	}
+
+	// Moves to the record at offset in segment, as given by getSegment() and getOffset()
+	public void seek(int segment, int offset) throws IOException {
+		if (segment < 0 || segment >= segments.length) throw new IOException("no segment " + segment + " in " + name);
+		open(segment);
+		buffer.position(offset);
+	}
+
+	// Null when the session has no index, see SessionIndex.build()
+	public SessionIndex getIndex() throws IOException {
+		if (!indexLoaded) {
+			indexLoaded = true;
+			if (new File(directory, name + SessionIndex.SUFFIX).isFile()) index = new SessionIndex(directory, name);
+		}
+		return index;
+	}
+
+	static boolean atRecord(ByteBuffer buffer) {
+		return buffer.remaining() >= SessionRecorder.RECORD_HEADER_SIZE && buffer.get(buffer.position()) == SessionRecorder.RECORD_MARK;
+	}
+
+	// Segment and offset of the record of the current packet
+	public int getSegment() {
+		return nextSegment - 1;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getMsgId() {
+		return msgId;
+	}
+
+	public byte getCrcStatus() {
+		return crcStatus;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	// System.nanoTime() on the recording phone, only differences make sense
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
+	// Wall clock time the packet was received, from the start of the session
+	public long getReceivedMillis() {
+		return startMillis + (receivedNanos - startNanos) / 1000000;
+	}
+
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	public String getSessionName() {
+		return name;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	// Packets read so far
+	public long getRead() {
+		return read;
+	}
+
+	public void close() {
+		buffer = null;
+		index = null;
+		nextSegment = segments.length;
+	}
+}
@@ -0,0 +1,298 @@
+package com.NewApp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+/*
+ * Keeps every raw packet of a BioHarness session, as received and before any
+ * decoding, in segment files of SEGMENT_SIZE bytes:
+ *
+ *	header	int MAGIC, short VERSION, short 0, int segment index,
+ *		long session start (ms since epoch), long session start (System.nanoTime())
+ *	records	byte RECORD_MARK, byte msg id, byte CRC status, byte payload length,
+ *		long receive time (System.nanoTime()), payload
+ *
+ * up to the first byte that is not RECORD_MARK. Segments are created, mapped
+ * and their pages touched ahead of time on the recorder's own thread, so
+ * record() on the listener thread is a copy into memory, and starting a
+ * recording from the UI thread touches no file. Rolling to the next segment
+ * and forcing them to the disk happen on the recorder thread too. Until the
+ * first segment is ready, or when the next one is not ready yet, packets are
+ * dropped and counted rather than waited for. On close every segment is cut
+ * to what was written in it.
+ *
+ * The recorder thread also goes over what was recorded since its last round
+ * and writes the SessionIndex of the session, so record() does no more for it.
+ */
+public class SessionRecorder extends Thread {
+
+	public static final int MAGIC = 0x5A534547; // "ZSEG"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final byte RECORD_MARK = (byte) 0xA5;
+	public static final int RECORD_HEADER_SIZE = 12;
+	public static final int MAX_PAYLOAD = 255;
+	public static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+	public static final String SUFFIX = ".zseg";
+
+	private static final Diagnostics.Tag TAG = Diagnostics.tag("recorder", 5);
+	private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final int PAGE_SIZE = 4096;
+
+	private static class Segment {
+		final int index;
+		final File file;
+		final RandomAccessFile access;
+		final MappedByteBuffer buffer;
+
+		Segment(int index, File file) throws IOException {
+			this.index = index;
+			this.file = file;
+			access = new RandomAccessFile(file, "rw");
+			access.setLength(SEGMENT_SIZE);
+			buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+		}
+
+		// Cut to length, what is written in it
+		void close(int length) {
+			try {
+				buffer.force();
+				access.setLength(length);
+				access.close();
+			} catch (IOException e) {
+				Diagnostics.log(TAG, Log.WARN, file.getName(), e);
+			}
+		}
+	}
+
+	private final File directory;
+	private final String name;
+	private final long startMillis;
+	private final long startNanos;
+	private int nextIndex = 0;
+
+	// written by the listener thread only, the recorder thread forces it, null until ready
+	private volatile Segment current;
+	// handed over between the two threads
+	private volatile Segment spare;
+	private volatile Segment retired;
+	private volatile boolean running = true;
+	// set by the listener thread during record(), no segment is cut under it
+	private volatile boolean writing = false;
+
+	// on the recorder thread: the records indexed so far, and where the next one is
+	private SessionIndex.Builder sessionIndex;
+	private long indexed = 0;
+	private int scanSegment = 0;
+	private ByteBuffer scan;
+	private final byte[] scanPayload = new byte[MAX_PAYLOAD];
+
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	// Records into directory, in files named after the start of the session, once start()ed
+	public SessionRecorder(File directory) {
+		super("SessionRecorder");
+		this.directory = directory;
+		startMillis = System.currentTimeMillis();
+		startNanos = System.nanoTime();
+		name = "session-" + startMillis;
+		setDaemon(true);
+		setPriority(Thread.MIN_PRIORITY);
+	}
+
+	private Segment newSegment() throws IOException {
+		int index = nextIndex++;
+		Segment segment = new Segment(index, new File(directory, segmentName(name, index)));
+		MappedByteBuffer buffer = segment.buffer;
+		// fault every page in now rather than on the listener thread
+		for (int i = 0; i < SEGMENT_SIZE; i += PAGE_SIZE) {
+			buffer.put(i, (byte) 0);
+		}
+		buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(index);
+		buffer.putLong(startMillis).putLong(startNanos);
+		// the rest of the header is left for later versions
+		buffer.position(HEADER_SIZE);
+		return segment;
+	}
+
+	static String segmentName(String session, int index) {
+		return session + "-" + (index < 10 ? "00" : index < 100 ? "0" : "") + index + SUFFIX;
+	}
+
+	/*
+	 * On the listener thread, as the packet arrived: crcStatus from ZephyrPacketArgs
+	 * and the time from System.nanoTime().
+	 */
+	public void record(int msgId, byte crcStatus, byte[] payload, long receivedNanos) {
+		writing = true;
+		try {
+			if (!running) return;
+			Segment segment = current;
+			if (segment == null) {
+				// the first segment is still being prepared
+				dropped.incrementAndGet();
+				return;
+			}
+			int length = payload == null ? 0 : Math.min(payload.length, MAX_PAYLOAD);
+			MappedByteBuffer buffer = segment.buffer;
+			if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+				Segment next = spare;
+				if (next == null || retired != null) {
+					dropped.incrementAndGet();
+					return;
+				}
+				spare = null;
+				retired = segment;
+				current = next;
+				buffer = next.buffer;
+				LockSupport.unpark(this);
+			}
+			int start = buffer.position();
+			buffer.position(start + 1);
+			buffer.put((byte) msgId).put(crcStatus).put((byte) length).putLong(receivedNanos);
+			if (length > 0) buffer.put(payload, 0, length);
+			// the mark goes last, a record cut short by a crash is not read
+			buffer.put(start, RECORD_MARK);
+			recorded.set(recorded.get() + 1);
+			bytes.set(bytes.get() + RECORD_HEADER_SIZE + length);
+		} finally {
+			writing = false;
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create " + directory);
+			sessionIndex = new SessionIndex.Builder(new File(directory, name + SessionIndex.SUFFIX), startMillis, startNanos);
+			Segment first = newSegment();
+			scan = first.buffer.duplicate();
+			scan.position(HEADER_SIZE);
+			current = first;
+			spare = newSegment();
+		} catch (IOException e) {
+			// what was created is closed below, record() ignores the packets from now on
+			Diagnostics.log(TAG, Log.WARN, "not recording", e);
+			running = false;
+		}
+		while (running) {
+			LockSupport.parkNanos(this, FORCE_INTERVAL_NANOS);
+			Segment full = retired;
+			// every record of a retired segment is counted by now, they are indexed before it goes
+			index();
+			if (full != null) {
+				full.close(full.buffer.position());
+				retired = null;
+			}
+			if (spare == null) {
+				try {
+					spare = newSegment();
+				} catch (IOException e) {
+					// tried again on the next round, meanwhile packets are dropped
+					Diagnostics.log(TAG, Log.WARN, "next segment", e);
+				}
+			}
+			// the mapped pages reach the disk without this, only later
+			current.buffer.force();
+			flushIndex();
+		}
+		// a record() that saw running before it changed is let finish
+		while (writing) {
+			Thread.yield();
+		}
+		Segment last = current;
+		if (last != null) index();
+		try {
+			if (sessionIndex != null) sessionIndex.close();
+		} catch (IOException e) {
+			Diagnostics.log(TAG, Log.WARN, "index", e);
+		}
+		Segment full = retired;
+		if (full != null) full.close(full.buffer.position());
+		if (last != null) last.close(last.buffer.position());
+		Segment unused = spare;
+		if (unused != null) {
+			unused.close(0);
+			unused.file.delete();
+		}
+	}
+
+	/*
+	 * Indexes the records counted so far. The count is written after the record,
+	 * so reading it first makes them all visible here, in the segment being
+	 * scanned then in the current one.
+	 */
+	private void index() {
+		long available = recorded.get();
+		try {
+			while (indexed < available) {
+				if (!SessionReader.atRecord(scan)) {
+					Segment next = current;
+					if (next.index != scanSegment + 1) break;
+					scanSegment = next.index;
+					scan = next.buffer.duplicate();
+					scan.position(HEADER_SIZE);
+					continue;
+				}
+				int offset = scan.position();
+				scan.get();
+				int msgId = scan.get() & 0xFF;
+				byte crcStatus = scan.get();
+				int length = scan.get() & 0xFF;
+				long receivedNanos = scan.getLong();
+				scan.get(scanPayload, 0, length);
+				sessionIndex.add(scanSegment, offset, receivedNanos, msgId, crcStatus, scanPayload, length);
+				++indexed;
+			}
+		} catch (IOException e) {
+			Diagnostics.log(TAG, Log.WARN, "index", e);
+		}
+	}
+
+	private void flushIndex() {
+		try {
+			sessionIndex.flush();
+		} catch (IOException e) {
+			Diagnostics.log(TAG, Log.WARN, "index", e);
+		}
+	}
+
+	// Stops recording, what was recorded is forced to the disk on the recorder thread
+	public void close() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	// The segment files start with it
+	public String getSessionName() {
+		return name;
+	}
+
+	public long getRecorded() {
+		return recorded.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	// Packets lost because the next segment was not ready
+	public long getDropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,153 @@
+package com.NewApp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+/*
+ * Plays a recorded session back through PacketDecoder, the decode path of the
+ * BioHarness listener, so everything downstream (sample bus, ECG stream, OSC)
+ * sees it as if the device was connected. The time between two packets is the
+ * recorded one divided by the speed, optionally with the long pauses cut to
+ * maxGapMillis, or nothing at all at AS_FAST_AS_POSSIBLE. Packets are given the
+ * time they are played at, like the listener does.
+ *
+ * Plain Java, it runs off the phone against the same receivers:
+ *
+ *	java com.NewApp.SessionReplay sessions [session|-] [host port] [speed] [maxGapMillis]
+ */
+public class SessionReplay {
+
+	public static final double AS_FAST_AS_POSSIBLE = 0;
+
+	private static final Diagnostics.Tag TAG = Diagnostics.tag("replay", 5);
+	// closer than that the wait spins, parking would overshoot
+	private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+	private final PacketDecoder decoder;
+	private volatile double speed = 1;
+	private volatile long maxGapNanos = 0;
+	private volatile boolean running = true;
+	private long played = 0;
+	private long lateNanos = 0;
+
+	public SessionReplay(Communicator communicator) {
+		decoder = new PacketDecoder(communicator);
+	}
+
+	// 1 for the recorded pace, 10 for ten times faster, AS_FAST_AS_POSSIBLE
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	// Pauses longer than that, e.g. the device out of range, are cut to it. 0 keeps them
+	public void setMaxGapMillis(long millis) {
+		maxGapNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	public long getMaxGapMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxGapNanos);
+	}
+
+	/*
+	 * Plays the whole session on the calling thread, the only one feeding the
+	 * decoder meanwhile, and returns the packets played. The sequence trackers
+	 * are restarted as for a new connection.
+	 */
+	public long replay(SessionReader reader) throws IOException {
+		decoder.restart();
+		long count = 0;
+		long begin = System.nanoTime();
+		// recorded time elapsed, pauses cut
+		long elapsed = 0;
+		long previous = 0;
+		while (running && reader.next()) {
+			long received = reader.getReceivedNanos();
+			if (count > 0) {
+				long gap = Math.max(0, received - previous);
+				if (maxGapNanos > 0 && gap > maxGapNanos) gap = maxGapNanos;
+				elapsed += gap;
+			}
+			previous = received;
+			double pace = speed;
+			if (pace > AS_FAST_AS_POSSIBLE) waitUntil(begin + (long) (elapsed / pace));
+			decoder.received(reader.getMsgId(), reader.getCrcStatus(), reader.getPayload(), System.currentTimeMillis());
+			++count;
+		}
+		played += count;
+		return count;
+	}
+
+	private void waitUntil(long deadline) {
+		long remaining = deadline - System.nanoTime();
+		if (remaining < 0) {
+			lateNanos = Math.max(lateNanos, -remaining);
+			return;
+		}
+		while (remaining > SPIN_NANOS && running) {
+			LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+			remaining = deadline - System.nanoTime();
+		}
+		while (deadline - System.nanoTime() > 0) {
+			// spinning until the packet is due
+		}
+	}
+
+	// From another thread, replay() returns after the current packet
+	public void stop() {
+		running = false;
+	}
+
+	// Packets played by every replay() so far
+	public long getPlayed() {
+		return played;
+	}
+
+	// Furthest a packet was played after it was due, the machine could not keep the pace
+	public long getLateNanos() {
+		return lateNanos;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: SessionReplay sessions [session|-] [host port] [speed] [maxGapMillis]");
+			System.exit(2);
+		}
+		File directory = new File(args[0]);
+		String session = args.length > 1 ? args[1] : "-";
+		if (session.equals("-")) {
+			String[] sessions = SessionReader.sessions(directory);
+			if (sessions.length == 0) throw new IOException("no session in " + directory);
+			session = sessions[sessions.length - 1];
+		}
+		Communicator communicator = new Communicator();
+		communicator.start();
+		communicator.setHost(args.length > 3 ? args[2] : "127.0.0.1");
+		communicator.setPortout(args.length > 3 ? args[3] : "7772");
+		communicator.connect();
+		SessionReplay replay = new SessionReplay(communicator);
+		replay.setSpeed(args.length > 4 ? Double.parseDouble(args[4]) : 1);
+		replay.setMaxGapMillis(args.length > 5 ? Long.parseLong(args[5]) : 0);
+
+		SessionReader reader = new SessionReader(directory, session);
+		Diagnostics.log(TAG, Log.INFO, "replaying", session);
+		long start = System.nanoTime();
+		long count = replay.replay(reader);
+		reader.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(session + ": " + count + " packets in " + seconds + " s, "
+			+ (long) (count / seconds) + " packets/s, late up to " + replay.getLateNanos() / 1000 + " us");
+		// what is still queued goes out before the numbers are taken
+		Thread.sleep(500);
+		System.out.println(communicator.getStats());
+		communicator.close();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,140 @@
+package com.NewApp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import android.util.Log;
+
+/*
+ * OSC 1.1 stream transport: packets are SLIP framed (double END) over one
+ * persistent TCP connection, for waveforms that must not lose chunks.
+ *
+ * Nagle is switched off and batching is done here instead: packets are framed
+ * into a batch that is written when it reaches about one segment or when the
+ * sender's queue is drained, so a burst costs few writes and a lone packet is
+ * not held back by the kernel. If the connection breaks, the batch that could
+ * not be written is kept and written first once reconnected (with backoff).
+ */
+public class TcpSlipTransport implements OscTransport {
+
+	private static final byte END = (byte) 0xC0;
+	private static final byte ESC = (byte) 0xDB;
+	private static final byte ESC_END = (byte) 0xDC;
+	private static final byte ESC_ESC = (byte) 0xDD;
+
+	// write as soon as a batch fills about one TCP segment
+	private static final int FLUSH_THRESHOLD = 1400;
+	private static final int BATCH_CAPACITY = 64 * 1024;
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+	private static final long MAX_BACKOFF_MILLIS = 5000;
+	private static final Diagnostics.Tag SENDER = Diagnostics.tag("sender osc", 5);
+
+	private InetSocketAddress address;
+	private Socket socket;
+	private OutputStream out;
+	private final ByteBuffer batch = ByteBuffer.allocate(BATCH_CAPACITY);
+	private long nextAttemptAt = 0;
+	private long backoffMillis = 100;
+	private long droppedBytes = 0;
+	private int reconnects = 0;
+
+	// Does not connect, the first flush() does it on the sender thread. A receiver
+	// that is not up yet is not an error, we keep trying
+	public void open(InetAddress address, int port) throws IOException {
+		this.address = new InetSocketAddress(address, port);
+	}
+
+	public void send(ByteBuffer packet) throws IOException {
+		// worst case every byte is escaped
+		int worstCase = 2 * packet.remaining() + 2;
+		if (worstCase > batch.remaining()) {
+			// disconnected for a while, keep the newest data
+			droppedBytes += batch.position();
+			batch.clear();
+			if (worstCase > batch.remaining()) throw new IOException("Packet too large");
+		}
+		batch.put(END);
+		while (packet.hasRemaining()) {
+			byte b = packet.get();
+			if (b == END) {
+				batch.put(ESC).put(ESC_END);
+			} else if (b == ESC) {
+				batch.put(ESC).put(ESC_ESC);
+			} else {
+				batch.put(b);
+			}
+		}
+		batch.put(END);
+		if (batch.position() >= FLUSH_THRESHOLD) flush();
+	}
+
+	public void flush() throws IOException {
+		if (batch.position() == 0) return;
+		if (out == null && !connect()) return;
+		try {
+			out.write(batch.array(), 0, batch.position());
+			out.flush();
+			batch.clear();
+		} catch (IOException e) {
+			// the batch stays, it is resent after reconnecting
+			disconnect();
+			throw e;
+		}
+	}
+
+	private boolean connect() {
+		long now = System.currentTimeMillis();
+		if (now < nextAttemptAt) return false;
+		try {
+			Socket s = new Socket();
+			s.setTcpNoDelay(true);
+			s.setKeepAlive(true);
+			s.connect(address, CONNECT_TIMEOUT_MILLIS);
+			socket = s;
+			out = s.getOutputStream();
+			backoffMillis = 100;
+			if (reconnects++ > 0) Diagnostics.log(SENDER, Log.INFO, "stream reconnected to", address);
+			return true;
+		} catch (IOException e) {
+			nextAttemptAt = now + backoffMillis;
+			backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+			return false;
+		}
+	}
+
+	private void disconnect() {
+		try {
+			if (socket != null) socket.close();
+		} catch (IOException e) {
+			// already broken
+		}
+		socket = null;
+		out = null;
+		nextAttemptAt = System.currentTimeMillis() + backoffMillis;
+	}
+
+	public void listen(int port, Listener listener) throws IOException {
+		throw new IOException("The stream transport only sends");
+	}
+
+	public void close() {
+		try {
+			flush();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		disconnect();
+	}
+
+	public long getDroppedBytes() {
+		return droppedBytes;
+	}
+
+	public boolean isConnected() {
+		return out != null;
+	}
+}
@@ -0,0 +1,45 @@
+package com.NewApp;
+
+/*
+ * What the BioHarness computes itself and sends once per second in the summary
+ * packet: its own view of the vital signs, their confidence, and the state of
+ * the device. Filled in place by the listener, sent as one /telemetry message.
+ */
+public class TelemetryRecord {
+
+	// OSC types of the fields, in the order they are sent
+	static final String TYPES = ",iffifffiffiffiiiiif";
+
+	public int heartRate;
+	public float respirationRate;
+	public float skinTemperature;
+	public int posture;
+	// in VMU (g)
+	public float activity;
+	public float peakAcceleration;
+	public float batteryVoltage;
+	// percent
+	public int batteryLevel;
+	public float breathingAmplitude;
+	public float breathingNoise;
+	// confidences are 0 to 100
+	public int breathingConfidence;
+	public float ecgAmplitude;
+	public float ecgNoise;
+	public int heartRateConfidence;
+	public int heartRateVariability;
+	public int systemConfidence;
+	public int gsr;
+	// red, orange or green status of the wearer
+	public int rogStatus;
+	public float deviceTemperature;
+
+	void addTo(OscFrame frame) {
+		frame.add(heartRate).add(respirationRate).add(skinTemperature).add(posture);
+		frame.add(activity).add(peakAcceleration).add(batteryVoltage).add(batteryLevel);
+		frame.add(breathingAmplitude).add(breathingNoise).add(breathingConfidence);
+		frame.add(ecgAmplitude).add(ecgNoise).add(heartRateConfidence);
+		frame.add(heartRateVariability).add(systemConfidence).add(gsr).add(rogStatus);
+		frame.add(deviceTemperature);
+	}
+}
@@ -0,0 +1,255 @@
+package com.NewApp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * One waveform of a session in its own file, a column of WaveformCodec blocks:
+ *
+ *	header	int MAGIC, short VERSION, short samples per block
+ *	blocks	long time the first sample came in (ms since epoch), WaveformCodec block
+ *
+ * Around 6 bits per ECG or breathing sample where the packets take 10 and a
+ * short 16, so days of installation fit on the phone, and decoding is far
+ * quicker than a replay needs. compact() turns the ECG and breathing of a recorded session
+ * into such files, main() does it for a session and prints the ratio and the
+ * encode and decode throughput:
+ *
+ *	java com.NewApp.WaveformArchive sessions [session|-]
+ */
+public class WaveformArchive {
+
+	public static final int MAGIC = 0x5A574156; // "ZWAV"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	// 2 s of ECG, about a minute of breathing
+	public static final int BLOCK_SAMPLES = 512;
+	public static final String ECG_SUFFIX = "-ecg.zwav";
+	public static final String BREATHING_SUFFIX = "-breathing.zwav";
+
+	// Appends samples, a block is encoded and written once it is full
+	public static class Writer {
+		private final FileOutputStream stream;
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private final short[] block;
+		private int count = 0;
+		private long blockTime;
+		private long samples = 0;
+		private long bytes = HEADER_SIZE;
+		private long encodeNanos = 0;
+
+		public Writer(File file, int blockSamples) throws IOException {
+			stream = new FileOutputStream(file);
+			channel = stream.getChannel();
+			block = new short[blockSamples];
+			buffer = ByteBuffer.allocateDirect(8 + WaveformCodec.maxEncodedSize(blockSamples));
+			buffer.putInt(MAGIC).putShort(VERSION).putShort((short) blockSamples);
+			flush();
+		}
+
+		// timeMillis is when the samples came in, the block keeps the one of its first sample
+		public void append(long timeMillis, short[] samples, int offset, int length) throws IOException {
+			for (int i = 0; i < length; ++i) {
+				if (count == 0) blockTime = timeMillis;
+				block[count++] = samples[offset + i];
+				if (count == block.length) writeBlock();
+			}
+		}
+
+		public void append(long timeMillis, short sample) throws IOException {
+			if (count == 0) blockTime = timeMillis;
+			block[count++] = sample;
+			if (count == block.length) writeBlock();
+		}
+
+		private void writeBlock() throws IOException {
+			long start = System.nanoTime();
+			buffer.putLong(blockTime);
+			WaveformCodec.encode(block, 0, count, buffer);
+			encodeNanos += System.nanoTime() - start;
+			samples += count;
+			bytes += buffer.position();
+			count = 0;
+			flush();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		// Writes the last, shorter block
+		public void close() throws IOException {
+			try {
+				if (count > 0) writeBlock();
+			} finally {
+				stream.close();
+			}
+		}
+
+		public long getSamples() {
+			return samples;
+		}
+
+		// Written to the file so far
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getEncodeNanos() {
+			return encodeNanos;
+		}
+	}
+
+	// Block after block, into one array reused for every block
+	public static class Reader {
+		private final MappedByteBuffer buffer;
+		private final short[] samples;
+		private int count;
+		private long timeMillis;
+		private short min;
+		private short max;
+
+		public Reader(File file) throws IOException {
+			RandomAccessFile access = new RandomAccessFile(file, "r");
+			try {
+				buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+			} finally {
+				access.close();
+			}
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) throw new IOException(file.getName() + " is not a waveform");
+			if (buffer.getShort() != VERSION) throw new IOException(file.getName() + " has another version");
+			samples = new short[buffer.getShort() & 0xFFFF];
+		}
+
+		// Moves to the next block and decodes it, false at the end
+		public boolean next() {
+			if (!skipHeader()) return false;
+			count = WaveformCodec.decode(buffer, samples, 0);
+			return true;
+		}
+
+		// Moves past the next block, only its time, count, min and max are read
+		public boolean skip() {
+			if (!skipHeader()) return false;
+			count = WaveformCodec.count(buffer);
+			WaveformCodec.skip(buffer);
+			return true;
+		}
+
+		private boolean skipHeader() {
+			if (buffer.remaining() < 8 + WaveformCodec.HEADER_SIZE) return false;
+			timeMillis = buffer.getLong();
+			min = WaveformCodec.min(buffer);
+			max = WaveformCodec.max(buffer);
+			return true;
+		}
+
+		// Valid up to getCount(), until the next block
+		public short[] getSamples() {
+			return samples;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getTimeMillis() {
+			return timeMillis;
+		}
+
+		public short getMin() {
+			return min;
+		}
+
+		public short getMax() {
+			return max;
+		}
+	}
+
+	/*
+	 * Writes the ECG and breathing samples of a session next to its segments,
+	 * from the packets the decoder would keep. Returns the two writers, closed,
+	 * for their counters.
+	 */
+	public static Writer[] compact(SessionReader reader) throws IOException {
+		File directory = reader.getDirectory();
+		String name = reader.getSessionName();
+		Writer ecg = new Writer(new File(directory, name + ECG_SUFFIX), BLOCK_SAMPLES);
+		Writer breathing = new Writer(new File(directory, name + BREATHING_SUFFIX), BLOCK_SAMPLES);
+		ZephyrPayload.Ecg ecgPacket = new ZephyrPayload.Ecg();
+		ZephyrPayload.Breathing breathingPacket = new ZephyrPayload.Breathing();
+		try {
+			while (reader.next()) {
+				if (reader.getCrcStatus() != 0) continue;
+				int msgId = reader.getMsgId();
+				byte[] payload = reader.getPayload();
+				if (msgId == PacketDecoder.ECG_MSG_ID && payload.length >= PacketDecoder.ECG_LENGTH) {
+					ecgPacket.wrap(payload);
+					long time = reader.getReceivedMillis();
+					for (int i = 0; i < ZephyrPayload.Ecg.SAMPLES; ++i) {
+						ecg.append(time, ecgPacket.sample(i));
+					}
+				} else if (msgId == PacketDecoder.BREATHING_MSG_ID && payload.length >= PacketDecoder.BREATHING_LENGTH) {
+					breathingPacket.wrap(payload);
+					long time = reader.getReceivedMillis();
+					for (int i = 0; i < ZephyrPayload.Breathing.SAMPLES; ++i) {
+						breathing.append(time, breathingPacket.sample(i));
+					}
+				}
+			}
+		} finally {
+			ecg.close();
+			breathing.close();
+		}
+		return new Writer[] {ecg, breathing};
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: WaveformArchive sessions [session|-]");
+			System.exit(2);
+		}
+		File directory = new File(args[0]);
+		String session = args.length > 1 ? args[1] : "-";
+		if (session.equals("-")) {
+			String[] sessions = SessionReader.sessions(directory);
+			if (sessions.length == 0) throw new IOException("no session in " + directory);
+			session = sessions[sessions.length - 1];
+		}
+		Writer[] writers = compact(new SessionReader(directory, session));
+		String[] suffixes = {ECG_SUFFIX, BREATHING_SUFFIX};
+		for (int i = 0; i < writers.length; ++i) {
+			Writer writer = writers[i];
+			long samples = writer.getSamples();
+			if (samples == 0) continue;
+			File file = new File(directory, session + suffixes[i]);
+			// decoded a few times over, the first rounds warm up
+			long decodeNanos = Long.MAX_VALUE;
+			long checksum = 0;
+			for (int round = 0; round < 10; ++round) {
+				long start = System.nanoTime();
+				Reader reader = new Reader(file);
+				while (reader.next()) {
+					checksum += reader.getSamples()[reader.getCount() - 1];
+				}
+				decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+			}
+			System.out.println(file.getName() + ": " + samples + " samples, " + writer.getBytes() + " bytes, "
+				+ (float) (writer.getBytes() * 8.0 / samples) + " bits per sample, "
+				+ (float) (samples * 2.0 / writer.getBytes()) + "x shorts, "
+				+ (float) (samples * 10.0 / 8 / writer.getBytes()) + "x packed 10 bit");
+			System.out.println("  encode " + (long) (samples * 1e9 / writer.getEncodeNanos()) + " samples/s, decode "
+				+ (long) (samples * 1e9 / decodeNanos) + " samples/s (" + checksum + ")");
+		}
+	}
+}
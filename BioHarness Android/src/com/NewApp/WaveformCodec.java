@@ -0,0 +1,174 @@
+package com.NewApp;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Block codec for the waveforms (ECG, breathing), which change little from one
+ * sample to the next. A block of samples is turned into residuals, either the
+ * differences between samples or the differences of those, whichever packs
+ * smaller, zig-zag encoded so small negative residuals are small numbers too.
+ * The residuals are then packed by frames of FRAME, each with the bits of its
+ * largest one, so a QRS complex only widens the frame it is in. Block header:
+ *
+ *	short count, short min, short max, short first sample,
+ *	byte order (DELTA or DELTA_OF_DELTA), short length of the frames
+ *
+ * then every frame: byte width, FRAME (fewer in the last one) * width bits.
+ * min and max are those of the samples, so a block can be drawn as an overview
+ * or skipped without decoding it. Encoding and decoding allocate nothing, with
+ * a 64 bit accumulator for the bits.
+ */
+public final class WaveformCodec {
+
+	public static final int HEADER_SIZE = 11;
+	public static final int FRAME = 32;
+	public static final int MAX_BLOCK = 4096;
+	public static final byte DELTA = 1;
+	public static final byte DELTA_OF_DELTA = 2;
+	// zig-zag second differences of 16 bit samples fit in 20 bits
+	private static final int MAX_WIDTH = 20;
+
+	private WaveformCodec() {
+	}
+
+	// What a block of count samples takes at most, header included
+	public static int maxEncodedSize(int count) {
+		int residuals = Math.max(count - 1, 0);
+		// a width byte and at most a byte of padding per frame
+		return HEADER_SIZE + (residuals + FRAME - 1) / FRAME * 2 + (residuals * MAX_WIDTH + 7) / 8;
+	}
+
+	/*
+	 * Writes samples[offset] to samples[offset + count - 1] at the position of out,
+	 * which needs maxEncodedSize(count) bytes left, and returns the bytes written.
+	 */
+	public static int encode(short[] samples, int offset, int count, ByteBuffer out) {
+		if (count < 1 || count > MAX_BLOCK) throw new IllegalArgumentException("block of " + count);
+		int start = out.position();
+		int min = samples[offset];
+		int max = min;
+		// bits either order would take, from the largest residual of every frame
+		int deltaBits = 0, secondBits = 0;
+		int deltaFrame = 0, secondFrame = 0;
+		int previous = samples[offset];
+		int previousDelta = 0;
+		for (int i = 1; i < count; ++i) {
+			int sample = samples[offset + i];
+			if (sample < min) min = sample;
+			if (sample > max) max = sample;
+			int delta = sample - previous;
+			// the first residual of the second order is the first difference itself
+			int second = i == 1 ? delta : delta - previousDelta;
+			deltaFrame |= zigZag(delta);
+			secondFrame |= zigZag(second);
+			if (i % FRAME == 0 || i == count - 1) {
+				int length = (i - 1) % FRAME + 1;
+				deltaBits += bits(deltaFrame) * length;
+				secondBits += bits(secondFrame) * length;
+				deltaFrame = secondFrame = 0;
+			}
+			previous = sample;
+			previousDelta = delta;
+		}
+		byte order = secondBits < deltaBits ? DELTA_OF_DELTA : DELTA;
+		out.putShort((short) count).putShort((short) min).putShort((short) max).putShort(samples[offset]);
+		out.put(order).putShort((short) 0);
+		int frames = out.position();
+		previous = samples[offset];
+		previousDelta = 0;
+		for (int frame = 1; frame < count; frame += FRAME) {
+			int end = Math.min(frame + FRAME, count);
+			// the widest residual of the frame first, then its bits
+			int widest = 0;
+			int last = previous, lastDelta = previousDelta;
+			for (int i = frame; i < end; ++i) {
+				int delta = samples[offset + i] - last;
+				widest |= zigZag(order == DELTA || i == 1 ? delta : delta - lastDelta);
+				last = samples[offset + i];
+				lastDelta = delta;
+			}
+			int width = bits(widest);
+			out.put((byte) width);
+			long bits = 0;
+			int pending = 0;
+			for (int i = frame; i < end; ++i) {
+				int delta = samples[offset + i] - previous;
+				int residual = order == DELTA || i == 1 ? delta : delta - previousDelta;
+				previous = samples[offset + i];
+				previousDelta = delta;
+				bits |= (long) zigZag(residual) << pending;
+				pending += width;
+				while (pending >= 8) {
+					out.put((byte) bits);
+					bits >>>= 8;
+					pending -= 8;
+				}
+			}
+			if (pending > 0) out.put((byte) bits);
+		}
+		out.putShort(frames - 2, (short) (out.position() - frames));
+		return out.position() - start;
+	}
+
+	private static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int bits(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+
+	/*
+	 * Reads the block at the position of in into samples from offset, which needs
+	 * room for count(in) samples, and returns the count.
+	 */
+	public static int decode(ByteBuffer in, short[] samples, int offset) {
+		int count = in.getShort() & 0xFFFF;
+		in.position(in.position() + 4);
+		int previous = in.getShort();
+		boolean second = in.get() == DELTA_OF_DELTA;
+		in.getShort();
+		samples[offset] = (short) previous;
+		int delta = 0;
+		for (int frame = 1; frame < count; frame += FRAME) {
+			int end = Math.min(frame + FRAME, count);
+			int width = in.get();
+			long mask = (1L << width) - 1;
+			long bits = 0;
+			int available = 0;
+			for (int i = frame; i < end; ++i) {
+				while (available < width) {
+					bits |= (long) (in.get() & 0xFF) << available;
+					available += 8;
+				}
+				int zigZag = (int) (bits & mask);
+				bits >>>= width;
+				available -= width;
+				int residual = (zigZag >>> 1) ^ -(zigZag & 1);
+				delta = second && i > 1 ? delta + residual : residual;
+				previous += delta;
+				samples[offset + i] = (short) previous;
+			}
+		}
+		return count;
+	}
+
+	// The header fields of the block at the position of in, which is left as it is
+	public static int count(ByteBuffer in) {
+		return in.getShort(in.position()) & 0xFFFF;
+	}
+
+	public static short min(ByteBuffer in) {
+		return in.getShort(in.position() + 2);
+	}
+
+	public static short max(ByteBuffer in) {
+		return in.getShort(in.position() + 4);
+	}
+
+	// Moves in past the block at its position without decoding it
+	public static void skip(ByteBuffer in) {
+		int length = in.getShort(in.position() + 9) & 0xFFFF;
+		in.position(in.position() + HEADER_SIZE + length);
+	}
+}
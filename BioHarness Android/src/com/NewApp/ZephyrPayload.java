@@ -0,0 +1,258 @@
+package com.NewApp;
+
+/*
+ * Views over the payload of a Zephyr packet, as given by ZephyrPacketArgs.getBytes().
+ * A view only keeps a reference to the array: every accessor reads its field
+ * straight from the bytes, so decoding a packet allocates nothing and reads only
+ * the fields asked for, where the PacketInfo classes of the vendor jar unpack
+ * whole arrays (through a BigInteger for every 4 waveform samples) on every call.
+ *
+ * General, summary, ECG and R to R values are the same as the vendor decoders, bit for
+ * bit. Its breathing and accelerometer unpackers sign extend the 4th byte of
+ * every 5 byte group into the next sample, and its accelerometer one also mixes
+ * up the first group of every 15 bytes and takes 1024 off negative values where
+ * 512 makes them 10 bit two's complement; the views read the plain 10 bit stream.
+ * A view is only valid until the array it wraps is reused, and is used by one thread.
+ */
+public class ZephyrPayload {
+
+	// the samples of every waveform start after the sequence number and the timestamp
+	static final int SAMPLES_OFFSET = 9;
+
+	protected byte[] bytes;
+
+	public ZephyrPayload wrap(byte[] payload) {
+		bytes = payload;
+		return this;
+	}
+
+	// 8 bit sequence number, the first byte of every packet type
+	public int sequence() {
+		return bytes[0] & 0xFF;
+	}
+
+	int uint16(int offset) {
+		return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+	}
+
+	short int16(int offset) {
+		return (short) uint16(offset);
+	}
+
+	// Waveforms are packed as a stream of 10 bit little endian values
+	int packed(int index) {
+		int bit = index * 10;
+		int offset = SAMPLES_OFFSET + (bit >> 3);
+		return (uint16(offset) >> (bit & 7)) & 1023;
+	}
+
+	/* General data packet, 0x20 */
+	public static class General extends ZephyrPayload {
+
+		public General wrap(byte[] payload) {
+			bytes = payload;
+			return this;
+		}
+
+		// beats per minute
+		public int heartRate() {
+			return bytes[9] & 0xFF;
+		}
+
+		// breaths per minute
+		public double respirationRate() {
+			return int16(11) / 10.0;
+		}
+
+		// degrees Celsius
+		public double skinTemperature() {
+			return int16(13) / 10.0;
+		}
+
+		// degrees from vertical
+		public int posture() {
+			return int16(15);
+		}
+
+		// in VMU (g)
+		public double activity() {
+			return int16(17) / 100.0;
+		}
+
+		// g
+		public double peakAcceleration() {
+			return int16(19) / 100.0;
+		}
+
+		// red, orange or green status of the wearer
+		public byte rogStatus() {
+			return bytes[49];
+		}
+	}
+
+	/* Summary packet, 0x2B, once per second */
+	public static class Summary extends ZephyrPayload {
+
+		public Summary wrap(byte[] payload) {
+			bytes = payload;
+			return this;
+		}
+
+		public int heartRate() {
+			return bytes[10] & 0xFF;
+		}
+
+		public double respirationRate() {
+			return int16(12) / 10.0;
+		}
+
+		public double skinTemperature() {
+			return int16(14) / 10.0;
+		}
+
+		public int posture() {
+			return int16(16);
+		}
+
+		// in VMU (g)
+		public double activity() {
+			return int16(18) / 100.0;
+		}
+
+		public double peakAcceleration() {
+			return int16(20) / 100.0;
+		}
+
+		// V
+		public double batteryVoltage() {
+			return int16(22) / 1000.0;
+		}
+
+		// percent
+		public int batteryLevel() {
+			return bytes[24] & 0x7F;
+		}
+
+		public double breathingAmplitude() {
+			return int16(25) / 1000.0;
+		}
+
+		public double breathingNoise() {
+			return int16(27) / 1000.0;
+		}
+
+		// confidences are 0 to 100
+		public int breathingConfidence() {
+			return bytes[29] & 0xFF;
+		}
+
+		// mV
+		public double ecgAmplitude() {
+			return int16(30) / 1000000.0;
+		}
+
+		public double ecgNoise() {
+			return int16(32) / 1000000.0;
+		}
+
+		public int heartRateConfidence() {
+			return bytes[34] & 0xFF;
+		}
+
+		public int heartRateVariability() {
+			return uint16(35);
+		}
+
+		public int systemConfidence() {
+			return bytes[37] & 0xFF;
+		}
+
+		public int gsr() {
+			return int16(38);
+		}
+
+		public int rogStatus() {
+			return int16(40) & 7;
+		}
+
+		// degrees Celsius
+		public double deviceTemperature() {
+			return int16(54) / 10.0;
+		}
+	}
+
+	/* Breathing waveform packet, 0x21 */
+	public static class Breathing extends ZephyrPayload {
+
+		public static final int SAMPLES = 18;
+
+		public Breathing wrap(byte[] payload) {
+			bytes = payload;
+			return this;
+		}
+
+		public short sample(int index) {
+			return (short) packed(index);
+		}
+	}
+
+	/* ECG waveform packet, 0x22 */
+	public static class Ecg extends ZephyrPayload {
+
+		public static final int SAMPLES = 63;
+
+		public Ecg wrap(byte[] payload) {
+			bytes = payload;
+			return this;
+		}
+
+		public short sample(int index) {
+			return (short) packed(index);
+		}
+	}
+
+	/* R to R packet, 0x24 */
+	public static class RtoR extends ZephyrPayload {
+
+		public static final int SAMPLES = 18;
+
+		public RtoR wrap(byte[] payload) {
+			bytes = payload;
+			return this;
+		}
+
+		// ms, the sign flips on every new beat once read as a signed 16 bit value
+		public int sample(int index) {
+			return uint16(SAMPLES_OFFSET + 2 * index);
+		}
+	}
+
+	/* Accelerometer packet, 0x2A, the axes of one sample after the other */
+	public static class Accelerometer extends ZephyrPayload {
+
+		public static final int SAMPLES = 20;
+
+		public Accelerometer wrap(byte[] payload) {
+			bytes = payload;
+			return this;
+		}
+
+		// g, axis 0 to 2 for x, y and z
+		public double acceleration(int index, int axis) {
+			// 10 bit two's complement, in 0.1 g
+			return (packed(index * 3 + axis) << 22 >> 22) / 10.0;
+		}
+
+		public double x(int index) {
+			return acceleration(index, 0);
+		}
+
+		public double y(int index) {
+			return acceleration(index, 1);
+		}
+
+		public double z(int index) {
+			return acceleration(index, 2);
+		}
+	}
+}
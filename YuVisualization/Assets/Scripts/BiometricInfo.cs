@@ -9,6 +9,8 @@ public class BiometricInfo : MonoBehaviour {
 	public int SendToPort = 7773;
 	public int ListenerPort = 7772;
 	public Plotter plotter;
+	// 1: every value is a string, 2: int32/float32 values and int arrays
+	public int WireVersion = 2;
 	
 	private Osc _handler;
 	private float _respirationRate = 0.0f;
@@ -51,6 +53,7 @@ public class BiometricInfo : MonoBehaviour {
 		_handler = GetComponent<Osc>();
 		_handler.init(udp);
 		
+		_handler.SetAddressHandler("/ready", ReadyMessage);
 		_handler.SetAddressHandler("/controller/HEART_RATE", HeartRateMessage);
 		_handler.SetAddressHandler("/controller/RESPIRATION_RATE", RespirationMessage);
 		_handler.SetAddressHandler("/controller/SKIN_TEMPERATURE", SkinTemperatureMessage);
@@ -88,6 +91,13 @@ public class BiometricInfo : MonoBehaviour {
 		GUILayout.EndVertical();
 	}
 	
+	// The phone announces itself and the highest wire version it can send,
+	// we answer with ours so it switches to typed values
+	public void ReadyMessage(OscMessage oscMessage)
+	{
+		_handler.Send(Osc.StringToOscMessage("/ready " + WireVersion));
+	}
+	
 	public void HeartRateMessage(OscMessage oscMessage)
  	{
  		heartRate = oscMessageToFloat(oscMessage);
@@ -105,7 +115,7 @@ public void SkinTemperatureMessage(OscMessage oscMessage)
 	
 	public void PostureMessage(OscMessage oscMessage)
  	{
- 		_posture = int.Parse((string)oscMessage.Values[0]);
+ 		_posture = oscMessageToInt(oscMessage);
 	}
 	
 	public void PeakAccelerationMessage(OscMessage oscMessage)
@@ -191,15 +201,31 @@ public void BreathingRawMessage(OscMessage oscMessage)
 		_breathingRawListener = breathingRawListener;
 	}
 	
+	// typed wire format unboxed as is, only the strings of the first wire format are parsed
 	private int oscMessageToInt(OscMessage oscMessage) {
-		return int.Parse(oscMessage.Values[0] + "");
+		object value = oscMessage.Values[0];
+		if (value is string) return int.Parse((string)value);
+		return (int)value;
 	}
 	
 	private float oscMessageToFloat(OscMessage oscMessage) {
-		return float.Parse(oscMessage.Values[0] +"");
+		object value = oscMessage.Values[0];
+		if (value is string) return float.Parse((string)value);
+		// the integer metrics (heart rate, posture) come as int32
+		if (value is int) return (int)value;
+		return (float)value;
 	}
 	
 	private int[] oscMessageToIntArray(OscMessage oscMessage) {
+		if (!(oscMessage.Values[0] is string)) {
+			// typed wire format, one int per sample
+			int[] samples = new int[oscMessage.Values.Count];
+			for (var i = 0; i < samples.Length; ++i) {
+				samples[i] = (int)oscMessage.Values[i];
+			}
+			return samples;
+		}
+		
 		string[] split = (oscMessage.Values[0] +"").Trim().Split(" "[0]);
 		int[] result = new int[split.Length];
 		
@@ -11,8 +11,15 @@ import processing.serial.*;
 
 Serial serialPort; 
 int counter;
-String[] data; 
-int tLength = 60000;
+// last value read, printed with the count once per flush
+int lastGsr = -1;
+
+// Samples go straight to the file as "millis,value" lines, one file per session,
+// flushed every flushMillis so a crash loses at most that much
+PrintWriter output;
+String outputName;
+int flushMillis = 1000;
+int lastFlush;
 
 //OSC related
 OscP5 oscP5;
@@ -26,7 +33,10 @@ void setup()
 // To see the ports 
   serialPort = new Serial(this, Serial.list()[0], 9600); 
   counter = 0; 
-  data = new String[tLength];
+  outputName = "thesis_data_" + year() + nf(month(), 2) + nf(day(), 2) + "_" + nf(hour(), 2) + nf(minute(), 2) + nf(second(), 2) + ".csv";
+  output = createWriter(outputName);
+  output.println("millis,gsr");
+  lastFlush = millis();
   
   // OSC config set to listen port 12000
   oscP5 = new OscP5(this, 12000);
@@ -43,22 +53,31 @@ void sendOSCGSR(int GSR)
 void draw() 
 { 
   int temp = serialPort.read();
-  // If there is some input print it 
+  // If there is some input save it 
   if (temp != -1) 
   { 
-    println(counter + " " + temp); 
-    //data[counter] = counter + "," + temp; counter++; 
-    data[counter] = "" + temp;
+    lastGsr = temp;
+    output.print(millis());
+    output.print(',');
+    output.println(temp);
     counter++;
     // OSC send value
     sendOSCGSR(temp);
   }
   
-  // if we reached 20min save text and exit 
-  //if (counter == 1300) { 
-  if (counter == tLength) {
-    saveStrings("thesis_data.txt", data);
-    exit(); 
-  } 
+  if (millis() - lastFlush >= flushMillis) {
+    output.flush();
+    lastFlush = millis();
+    // printing every sample slowed the sketch down, once a second is enough to watch it
+    println(counter + " " + lastGsr);
+  }
 } 
 
+// Closing the sketch writes out what is left
+void exit() 
+{
+  output.flush();
+  output.close();
+  super.exit();
+}
+